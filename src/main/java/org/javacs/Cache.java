@@ -2,12 +2,17 @@ package org.javacs;
 
 import java.nio.file.Path;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
+import java.util.function.ToLongFunction;
 
-/** Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires. */
+/**
+ * Cache maps a file + an arbitrary key to a value. When the file is modified, all the mappings for that file expire.
+ * Cache holds values up to a maximum total weight, which by default is the number of mappings, and evicts the
+ * least-recently-used mappings when it is full. Cache is safe to use from multiple threads.
+ */
 class Cache<K, V> {
+    static final int DEFAULT_MAX_SIZE = 10_000;
+
     private static class Key<K> {
         final Path file;
         final K key;
@@ -32,43 +37,140 @@ class Cache<K, V> {
 
     private class Value {
         final V value;
+        final long weight;
         final Instant created = Instant.now();
 
-        Value(V value) {
+        Value(V value, long weight) {
             this.value = value;
+            this.weight = weight;
         }
     }
 
-    private final Map<Key, Value> map = new HashMap<>();
+    private final ToLongFunction<V> weigher;
+    private long maxWeight, weight;
+    /** map is in access order, so the first entry is the least-recently-used */
+    private final LinkedHashMap<Key<K>, Value> map = new LinkedHashMap<>(16, 0.75f, true);
+    /** byFile[file] is all the keys in map for file */
+    private final Map<Path, Set<Key<K>>> byFile = new HashMap<>();
+
+    private long hits, misses, evictions;
 
-    boolean has(Path file, K k) {
+    Cache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    Cache(int maxSize) {
+        this(maxSize, __ -> 1);
+    }
+
+    /** A cache that holds values whose total `weigher.applyAsLong(value)` is at most `maxWeight` */
+    Cache(long maxWeight, ToLongFunction<V> weigher) {
+        if (maxWeight < 1) throw new IllegalArgumentException("maxWeight " + maxWeight + " must be at least 1");
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    synchronized boolean has(Path file, K k) {
         return !needs(file, k);
     }
 
-    boolean needs(Path file, K k) {
+    synchronized boolean needs(Path file, K k) {
         // If key is not in map, it needs to be loaded
         var key = new Key<K>(file, k);
-        if (!map.containsKey(key)) return true;
-
-        // If key was loaded before file was last modified, it needs to be reloaded
         var value = map.get(key);
+        if (value == null) {
+            misses++;
+            return true;
+        }
+        // If key was loaded before file was last modified, everything we know about file needs to be reloaded
         var modified = FileStore.modified(file);
-        // TODO remove all keys associated with file when file changes
-        return value.created.isBefore(modified);
+        if (value.created.isBefore(modified)) {
+            purge(file);
+            misses++;
+            return true;
+        }
+        hits++;
+        return false;
     }
 
-    void load(Path file, K k, V v) {
-        // TODO limit total size of cache
+    synchronized void load(Path file, K k, V v) {
         var key = new Key<K>(file, k);
-        var value = new Value(v);
-        map.put(key, value);
+        var value = new Value(v, weigher.applyAsLong(v));
+        var replaced = map.put(key, value);
+        if (replaced != null) weight -= replaced.weight;
+        weight += value.weight;
+        byFile.computeIfAbsent(file, __ -> new HashSet<>()).add(key);
+        evict();
+    }
+
+    /** Evict least-recently-used mappings until the cache fits in maxWeight, always keeping the newest mapping */
+    private void evict() {
+        while (weight > maxWeight && map.size() > 1) {
+            var eldest = map.keySet().iterator().next();
+            remove(eldest);
+            evictions++;
+        }
     }
 
-    V get(Path file, K k) {
+    synchronized V get(Path file, K k) {
         var key = new Key<K>(file, k);
-        if (!map.containsKey(key)) {
-            throw new IllegalArgumentException(k + " is not in map " + map);
+        var value = map.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException(k + " is not in cache for " + file);
         }
-        return map.get(key).value;
+        return value.value;
+    }
+
+    /** The value of an up-to-date mapping for (file, k), checked and read in one step, or empty if it needs loading */
+    synchronized Optional<V> find(Path file, K k) {
+        if (needs(file, k)) return Optional.empty();
+        return Optional.of(get(file, k));
+    }
+
+    /** Forget all the mappings for `file` */
+    synchronized void purge(Path file) {
+        var keys = byFile.remove(file);
+        if (keys == null) return;
+        for (var key : keys) {
+            weight -= map.remove(key).weight;
+        }
+    }
+
+    private void remove(Key<K> key) {
+        weight -= map.remove(key).weight;
+        var keys = byFile.get(key.file);
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            byFile.remove(key.file);
+        }
+    }
+
+    /** Change the maximum total weight, evicting mappings if the cache no longer fits */
+    synchronized void setMaxWeight(long maxWeight) {
+        if (maxWeight < 1) throw new IllegalArgumentException("maxWeight " + maxWeight + " must be at least 1");
+        this.maxWeight = maxWeight;
+        evict();
+    }
+
+    synchronized String metrics() {
+        return String.format(
+                "%d entries weighing %d/%d, %d hits, %d misses, %d evicted",
+                map.size(), weight, maxWeight, hits, misses, evictions);
+    }
+
+    synchronized int size() {
+        return map.size();
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
     }
 }
@@ -0,0 +1,61 @@
+package org.javacs;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * CacheDirectory is where indexes that outlive a session are saved: ~/.cache/javacs, outside of the user's projects.
+ * Caches that describe a particular directory, like a workspace or a gradle home, go in a subdirectory named after a
+ * hash of that directory's path, so two workspaces never share or overwrite each other's caches.
+ */
+class CacheDirectory {
+    static Path root() {
+        return Paths.get(System.getProperty("user.home")).resolve(".cache").resolve("javacs");
+    }
+
+    /** The cache directory for `dir`, like ~/.cache/javacs/workspaces/my-project-0123456789abcdef */
+    static Path forPath(String kind, Path dir) {
+        var absolute = dir.toAbsolutePath().normalize();
+        var name = absolute.getFileName() == null ? "root" : absolute.getFileName().toString();
+        return root().resolve(kind).resolve(name + "-" + hash(absolute.toString()));
+    }
+
+    /** Like Consumer, but it can throw IOException */
+    interface IOConsumer<T> {
+        void accept(T t) throws IOException;
+    }
+
+    /**
+     * Write `file` with `write`, so that readers see either the old contents or the new contents, never a partial
+     * write. Several servers can share a cache, so each write goes through its own temp file, which is moved over
+     * `file` when it is complete.
+     */
+    static void writeAtomically(Path file, IOConsumer<DataOutputStream> write) throws IOException {
+        Files.createDirectories(file.getParent());
+        var temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                write.accept(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String hash(String text) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            var hex = new StringBuilder();
+            for (var i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.javacs;
+
+import java.util.*;
+
+/**
+ * ClassNameIndex finds qualified class names by their simple name. Names are kept in an array sorted by simple name,
+ * so exact and prefix lookups are a binary search, and CamelCase lookups like `ArrLi` for `ArrayList` only look at
+ * names that start with the same letter.
+ */
+class ClassNameIndex {
+    /** simpleNames[i] is the simple name of qualifiedNames[i], and simpleNames is sorted */
+    private final String[] simpleNames, qualifiedNames;
+
+    private ClassNameIndex(String[] simpleNames, String[] qualifiedNames) {
+        this.simpleNames = simpleNames;
+        this.qualifiedNames = qualifiedNames;
+    }
+
+    static ClassNameIndex of(Collection<String> qualifiedNames) {
+        var sorted = new String[qualifiedNames.size()];
+        qualifiedNames.toArray(sorted);
+        Arrays.sort(sorted, Comparator.comparing(StringSearch::lastName).thenComparing(Comparator.naturalOrder()));
+        var simple = new String[sorted.length];
+        for (var i = 0; i < sorted.length; i++) {
+            simple[i] = StringSearch.lastName(sorted[i]);
+        }
+        return new ClassNameIndex(simple, sorted);
+    }
+
+    int size() {
+        return simpleNames.length;
+    }
+
+    /** The qualified names of classes whose simple name is exactly `simpleName` */
+    List<String> exact(String simpleName) {
+        var result = new ArrayList<String>();
+        for (var i = lowerBound(simpleName); i < simpleNames.length && simpleNames[i].equals(simpleName); i++) {
+            result.add(qualifiedNames[i]);
+        }
+        return result;
+    }
+
+    /** The qualified names of classes whose simple name starts with `prefix`, in order of simple name */
+    List<String> prefix(String prefix) {
+        var result = new ArrayList<String>();
+        for (var i = lowerBound(prefix); i < simpleNames.length && simpleNames[i].startsWith(prefix); i++) {
+            result.add(qualifiedNames[i]);
+        }
+        return result;
+    }
+
+    /**
+     * The qualified names of classes whose simple name matches `query` hump by hump, where each hump is an upper-case
+     * letter followed by lower-case letters. For example, `ArrLi` and `AL` both match `ArrayList`. Names that simply
+     * start with `query` match too.
+     */
+    List<String> camelCase(String query) {
+        if (query.isEmpty()) return prefix(query);
+        var result = new ArrayList<String>();
+        var first = query.substring(0, 1);
+        for (var i = lowerBound(first); i < simpleNames.length && simpleNames[i].startsWith(first); i++) {
+            if (matchesCamelCase(simpleNames[i], query)) {
+                result.add(qualifiedNames[i]);
+            }
+        }
+        return result;
+    }
+
+    /** Does each hump of `query` start a hump of `candidate`, in order, with the first humps lined up? */
+    static boolean matchesCamelCase(String candidate, String query) {
+        if (candidate.startsWith(query)) return true;
+        var c = 0;
+        var q = 0;
+        while (q < query.length()) {
+            // Match the next hump of query against the start of the current hump of candidate
+            var hump = endOfHump(query, q);
+            if (!candidate.startsWith(query.substring(q, hump), c)) return false;
+            q = hump;
+            if (q == query.length()) return true;
+            // Skip to the start of the next hump of candidate
+            c = endOfHump(candidate, c);
+            if (c == candidate.length()) return false;
+        }
+        return true;
+    }
+
+    /** The index of the next upper-case letter after `start`, or the end of `name` */
+    private static int endOfHump(String name, int start) {
+        var i = start + 1;
+        while (i < name.length() && !Character.isUpperCase(name.charAt(i))) i++;
+        return i;
+    }
+
+    /** The index of the first simple name that is >= `name` */
+    private int lowerBound(String name) {
+        int lo = 0, hi = simpleNames.length;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (simpleNames[mid].compareTo(name) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
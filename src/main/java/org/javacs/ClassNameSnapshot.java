@@ -0,0 +1,204 @@
+package org.javacs;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * ClassNameSnapshot remembers the top-level classes in the JDK and in each jar on the class path, so creating a new
+ * compiler doesn't have to walk the JDK and open every jar again. Each entry is identified by a key, for example the
+ * path of a jar, plus the size and modified time of the file it was read from. The snapshot is saved in a compact
+ * binary file, which is read in one go when it is loaded, and entries are only decoded when someone asks for them. The
+ * file isn't memory-mapped, because a mapped file can't be replaced on Windows until the mapping is garbage-collected.
+ */
+class ClassNameSnapshot {
+    private static final int MAGIC = 0x4a53434e, VERSION = 1;
+
+    /** The class names found in one file, and the other files it adds to the class path */
+    static class Entry {
+        final List<String> classes, classPath;
+
+        Entry(List<String> classes, List<String> classPath) {
+            this.classes = classes;
+            this.classPath = classPath;
+        }
+    }
+
+    private static class Stored {
+        final long size, modified;
+        /** encoded is an Entry written by encode(...), either a slice of the file contents we loaded or newly encoded */
+        final ByteBuffer encoded;
+
+        Stored(long size, long modified, ByteBuffer encoded) {
+            this.size = size;
+            this.modified = modified;
+            this.encoded = encoded;
+        }
+    }
+
+    /** storage is the file the snapshot is saved to */
+    private final Path storage;
+
+    private final Map<String, Stored> entries = new HashMap<>();
+    /** dirty is true if entries has changed since it was last saved */
+    private boolean dirty;
+
+    ClassNameSnapshot(Path storage) {
+        this.storage = storage;
+        load();
+    }
+
+    /** The default location of the snapshot, which is shared by all workspaces */
+    static Path defaultStorage() {
+        return CacheDirectory.root().resolve("class-names");
+    }
+
+    /** The entry for `key`, if it was recorded from a file with the same size and modified time */
+    Optional<Entry> find(String key, long size, long modified) {
+        Stored stored;
+        synchronized (this) {
+            stored = entries.get(key);
+        }
+        if (stored == null || stored.size != size || stored.modified != modified) return Optional.empty();
+        // Decode outside the lock, so threads scanning different jars don't wait for each other
+        return Optional.of(decode(stored.encoded.duplicate()));
+    }
+
+    void put(String key, long size, long modified, Entry entry) {
+        var stored = new Stored(size, modified, encode(entry));
+        synchronized (this) {
+            entries.put(key, stored);
+            dirty = true;
+        }
+    }
+
+    /** Forget the entries whose key doesn't satisfy `keep` */
+    synchronized void retain(Predicate<String> keep) {
+        dirty |= entries.keySet().removeIf(key -> !keep.test(key));
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Encode a list of names, sorted so that each name can be stored as the length of the prefix it shares with the
+     * previous name, plus the rest of the name in UTF-8.
+     */
+    private static void encodeNames(List<String> names, DataOutputStream out) throws IOException {
+        var sorted = new ArrayList<String>(names);
+        Collections.sort(sorted);
+        out.writeInt(sorted.size());
+        var previous = "";
+        for (var name : sorted) {
+            var shared = 0;
+            var max = Math.min(255, Math.min(name.length(), previous.length()));
+            while (shared < max && name.charAt(shared) == previous.charAt(shared)) shared++;
+            // Don't split a surrogate pair
+            if (shared > 0 && shared < name.length() && Character.isLowSurrogate(name.charAt(shared))) shared--;
+            var rest = name.substring(shared).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(shared);
+            out.writeShort(rest.length);
+            out.write(rest);
+            previous = name;
+        }
+    }
+
+    private static List<String> decodeNames(ByteBuffer in) {
+        var count = in.getInt();
+        var names = new ArrayList<String>(count);
+        var previous = "";
+        var bytes = new byte[256];
+        for (var i = 0; i < count; i++) {
+            var shared = in.get() & 0xff;
+            var length = in.getShort() & 0xffff;
+            if (bytes.length < length) bytes = new byte[length];
+            in.get(bytes, 0, length);
+            var name = previous.substring(0, shared) + new String(bytes, 0, length, StandardCharsets.UTF_8);
+            names.add(name);
+            previous = name;
+        }
+        return names;
+    }
+
+    private static ByteBuffer encode(Entry entry) {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            encodeNames(entry.classes, out);
+            encodeNames(entry.classPath, out);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static Entry decode(ByteBuffer in) {
+        var classes = decodeNames(in);
+        var classPath = decodeNames(in);
+        return new Entry(classes, classPath);
+    }
+
+    /** Save the snapshot to disk, if it has changed since it was last saved */
+    synchronized void save() {
+        if (!dirty) return;
+        try {
+            CacheDirectory.writeAtomically(
+                    storage,
+                    out -> {
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        out.writeInt(entries.size());
+                        for (var key : entries.keySet()) {
+                            var stored = entries.get(key);
+                            var encoded = stored.encoded.duplicate();
+                            var bytes = new byte[encoded.remaining()];
+                            encoded.get(bytes);
+                            var keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                            out.writeShort(keyBytes.length);
+                            out.write(keyBytes);
+                            out.writeLong(stored.size);
+                            out.writeLong(stored.modified);
+                            out.writeInt(bytes.length);
+                            out.write(bytes);
+                        }
+                    });
+            dirty = false;
+            LOG.info(String.format("Saved class names of %d files to %s", entries.size(), storage));
+        } catch (IOException e) {
+            LOG.warning(String.format("Failed to save class names to %s: %s", storage, e.getMessage()));
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(storage)) return;
+        try {
+            var in = ByteBuffer.wrap(Files.readAllBytes(storage));
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                LOG.warning(String.format("Ignoring class names %s from an incompatible version", storage));
+                return;
+            }
+            var count = in.getInt();
+            for (var i = 0; i < count; i++) {
+                var keyBytes = new byte[in.getShort() & 0xffff];
+                in.get(keyBytes);
+                var key = new String(keyBytes, StandardCharsets.UTF_8);
+                var size = in.getLong();
+                var modified = in.getLong();
+                var length = in.getInt();
+                var encoded = in.slice().limit(length);
+                in.position(in.position() + length);
+                entries.put(key, new Stored(size, modified, encoded));
+            }
+            LOG.info(String.format("Loaded class names of %d files from %s", entries.size(), storage));
+        } catch (IOException | RuntimeException e) {
+            LOG.warning(String.format("Failed to load class names from %s: %s", storage, e));
+            entries.clear();
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,187 @@
+package org.javacs;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * ClassPathCache remembers the class path and doc path that InferConfig resolved for a workspace, so a restart doesn't
+ * have to wait for `mvn` or `bazel` before it can create a compiler. The cached paths are keyed by a fingerprint of the
+ * build files of the workspace, so editing a pom.xml, WORKSPACE or BUILD file makes the cache miss.
+ */
+class ClassPathCache {
+    private static final int MAGIC = 0x4a534350, VERSION = 1;
+
+    /** The class path and doc path resolved from build files with a particular fingerprint */
+    static class Resolved {
+        final String fingerprint;
+        final Set<Path> classPath, docPath;
+
+        Resolved(String fingerprint, Set<Path> classPath, Set<Path> docPath) {
+            this.fingerprint = fingerprint;
+            this.classPath = classPath;
+            this.docPath = docPath;
+        }
+
+        boolean samePaths(Resolved other) {
+            return classPath.equals(other.classPath) && docPath.equals(other.docPath);
+        }
+    }
+
+    /** storage is the file the resolved paths are saved to */
+    private final Path storage;
+
+    ClassPathCache(Path storage) {
+        this.storage = storage;
+    }
+
+    /** The default location of the cache for the workspace rooted at `workspaceRoot` */
+    static Path defaultStorage(Path workspaceRoot) {
+        return CacheDirectory.forPath("workspaces", workspaceRoot).resolve("class-path");
+    }
+
+    /** The paths that were saved for build files with `fingerprint`, if any */
+    synchronized Optional<Resolved> find(String fingerprint) {
+        if (!Files.exists(storage)) return Optional.empty();
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(storage)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOG.warning(String.format("Ignoring class path cache %s from an incompatible version", storage));
+                return Optional.empty();
+            }
+            var saved = in.readUTF();
+            if (!saved.equals(fingerprint)) {
+                LOG.info(String.format("Build files have changed since %s was saved", storage));
+                return Optional.empty();
+            }
+            var classPath = readPaths(in);
+            var docPath = readPaths(in);
+            LOG.info(
+                    String.format(
+                            "Loaded %d class path and %d doc path entries from %s",
+                            classPath.size(), docPath.size(), storage));
+            return Optional.of(new Resolved(fingerprint, classPath, docPath));
+        } catch (IOException e) {
+            LOG.warning(String.format("Failed to load class path cache from %s: %s", storage, e.getMessage()));
+            return Optional.empty();
+        }
+    }
+
+    synchronized void save(Resolved resolved) {
+        try {
+            CacheDirectory.writeAtomically(
+                    storage,
+                    out -> {
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        out.writeUTF(resolved.fingerprint);
+                        writePaths(resolved.classPath, out);
+                        writePaths(resolved.docPath, out);
+                    });
+            LOG.info(String.format("Saved class path to %s", storage));
+        } catch (IOException e) {
+            LOG.warning(String.format("Failed to save class path cache to %s: %s", storage, e.getMessage()));
+        }
+    }
+
+    private static Set<Path> readPaths(DataInputStream in) throws IOException {
+        var count = in.readInt();
+        var paths = new HashSet<Path>();
+        for (var i = 0; i < count; i++) {
+            paths.add(Paths.get(in.readUTF()));
+        }
+        return paths;
+    }
+
+    private static void writePaths(Set<Path> paths, DataOutputStream out) throws IOException {
+        out.writeInt(paths.size());
+        for (var p : paths) {
+            out.writeUTF(p.toString());
+        }
+    }
+
+    /**
+     * A hash of everything InferConfig reads to resolve the class path of `workspaceRoot`: the pom.xml, WORKSPACE and
+     * BUILD files in the workspace, the pom.xml files in the directories above it, which are usually parent poms, and
+     * `externalDependencies`.
+     */
+    static String fingerprint(Path workspaceRoot, Collection<String> externalDependencies) {
+        var files = new TreeSet<Path>(buildFiles(workspaceRoot));
+        for (var dir = workspaceRoot.getParent(); dir != null; dir = dir.getParent()) {
+            var parentPom = dir.resolve("pom.xml");
+            if (!Files.exists(parentPom)) break;
+            files.add(parentPom);
+        }
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (var file : files) {
+                digest.update(file.toString().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(Files.readAllBytes(file));
+                digest.update((byte) 0);
+            }
+            for (var id : new TreeSet<String>(externalDependencies)) {
+                digest.update(id.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            var hex = new StringBuilder();
+            for (var b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static List<Path> buildFiles(Path workspaceRoot) {
+        var found = new ArrayList<Path>();
+        try {
+            Files.walkFileTree(
+                    workspaceRoot,
+                    new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                            if (!dir.equals(workspaceRoot) && isIgnoredDirectory(dir)) {
+                                return FileVisitResult.SKIP_SUBTREE;
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            if (attrs.isRegularFile() && isBuildFile(file)) found.add(file);
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path file, IOException e) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return found;
+    }
+
+    private static boolean isIgnoredDirectory(Path dir) {
+        var name = dir.getFileName().toString();
+        return name.startsWith(".") || name.startsWith("bazel-") || name.equals("target") || name.equals("node_modules");
+    }
+
+    private static boolean isBuildFile(Path file) {
+        var name = file.getFileName().toString();
+        return name.equals("pom.xml")
+                || name.equals("WORKSPACE")
+                || name.equals("BUILD")
+                || name.equals("BUILD.bazel")
+                || name.endsWith(".bzl");
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
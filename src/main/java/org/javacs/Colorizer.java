@@ -2,7 +2,6 @@ package org.javacs;
 
 import com.sun.source.tree.*;
 import com.sun.source.util.*;
-import java.net.URI;
 import java.nio.file.Paths;
 import java.util.*;
 import javax.lang.model.element.*;
@@ -11,6 +10,10 @@ import org.javacs.lsp.*;
 class Colorizer extends TreePathScanner<Void, Void> {
     private final Trees trees;
     final SemanticColors colors = new SemanticColors();
+    /** The contents and line-start table of the file being colored */
+    private String contents;
+
+    private LineIndex lines;
 
     Colorizer(JavacTask task) {
         trees = Trees.instance(task);
@@ -45,19 +48,19 @@ class Colorizer extends TreePathScanner<Void, Void> {
                 return;
             }
             // Find name inside expression
-            var file = Paths.get(colors.uri);
-            var contents = FileStore.contents(file);
-            var region = contents.substring(start, end);
-            start += region.indexOf(name.toString());
+            var found = contents.indexOf(name.toString(), start);
+            if (found == -1 || found >= end) {
+                return;
+            }
+            start = found;
             end = start + name.length();
-            // Convert offset to line:column
-            var lines = root.getLineMap();
-            var startLine = (int) lines.getLineNumber(start);
-            var startColumn = (int) lines.getColumnNumber(start);
-            var endLine = (int) lines.getLineNumber(end);
-            var endColumn = (int) lines.getColumnNumber(end);
-            var startPos = new Position(startLine, startColumn);
-            var endPos = new Position(endLine, endColumn);
+            // Convert offset to line:column, which are 1-based in java/colors
+            var startPos = lines.position(start);
+            var endPos = lines.position(end);
+            startPos.line++;
+            startPos.character++;
+            endPos.line++;
+            endPos.character++;
             var range = new Range(startPos, endPos);
             colors.fields.add(range);
             if (toEl.getModifiers().contains(Modifier.STATIC)) {
@@ -87,15 +90,13 @@ class Colorizer extends TreePathScanner<Void, Void> {
     @Override
     public Void visitCompilationUnit(CompilationUnitTree t, Void __) {
         colors.uri = t.getSourceFile().toUri();
+        var file = Paths.get(colors.uri);
+        contents = FileStore.contents(file);
+        lines = FileStore.lineIndex(file);
         return super.visitCompilationUnit(t, null);
     }
 }
 
-class SemanticColors {
-    URI uri;
-    List<Range> statics = new ArrayList<>(), fields = new ArrayList<>();
-}
-
 class SemanticColorsMessage {
     List<SemanticColors> files;
 }
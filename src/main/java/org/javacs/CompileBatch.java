@@ -24,6 +24,8 @@ import org.javacs.lsp.*;
 
 class CompileBatch implements AutoCloseable {
     static final int MAX_COMPLETION_ITEMS = 50;
+    // Some of the best-matching class names turn out to be inaccessible, so rank more candidates than we return
+    private static final int MAX_CLASS_CANDIDATES = 4 * MAX_COMPLETION_ITEMS;
 
     private final JavaCompilerService parent;
     private final ReusableCompiler.Borrow borrow;
@@ -31,10 +33,25 @@ class CompileBatch implements AutoCloseable {
     private final Elements elements;
     private final Types types;
     private final List<CompilationUnitTree> roots;
+    // Diagnostics from this compilation task
+    private final List<javax.tools.Diagnostic<? extends JavaFileObject>> diags = new ArrayList<>();
 
     CompileBatch(JavaCompilerService parent, Collection<? extends JavaFileObject> files) {
         this.parent = parent;
-        this.borrow = batchTask(parent, files);
+        this.borrow = batchTask(parent, files, diags::add);
+        // Check for cancellation before and after each phase of each file, so a cancelled request frees the compiler
+        borrow.task.addTaskListener(
+                new TaskListener() {
+                    @Override
+                    public void started(TaskEvent e) {
+                        CancelToken.checkCancelled();
+                    }
+
+                    @Override
+                    public void finished(TaskEvent e) {
+                        CancelToken.checkCancelled();
+                    }
+                });
         this.trees = Trees.instance(borrow.task);
         this.elements = borrow.task.getElements();
         this.types = borrow.task.getTypes();
@@ -48,7 +65,12 @@ class CompileBatch implements AutoCloseable {
             // You can get at `Element` values using `Trees`
             borrow.task.analyze();
         } catch (IOException e) {
+            borrow.discard();
             throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            // Give the compiler back, so requests that are waiting for it don't hang
+            borrow.discard();
+            throw e;
         }
     }
 
@@ -59,7 +81,7 @@ class CompileBatch implements AutoCloseable {
     Set<Path> needsAdditionalSources() {
         // Check for "class not found errors" that refer to package private classes
         var addFiles = new HashSet<Path>();
-        for (var err : parent.diags) {
+        for (var err : diags) {
             if (!err.getCode().equals("compiler.err.cant.resolve.location")) continue;
             var className = errorText(err);
             var packageName = packageName(err);
@@ -104,10 +126,11 @@ class CompileBatch implements AutoCloseable {
     }
 
     private static ReusableCompiler.Borrow batchTask(
-            JavaCompilerService parent, Collection<? extends JavaFileObject> sources) {
-        parent.diags.clear();
+            JavaCompilerService parent,
+            Collection<? extends JavaFileObject> sources,
+            DiagnosticListener<? super JavaFileObject> diags) {
         var options = JavaCompilerService.options(parent.classPath, parent.addExports);
-        return parent.compiler.getTask(null, parent.fileManager, parent.diags::add, options, List.of(), sources);
+        return parent.compiler.getTask(null, diags, options, List.of(), sources);
     }
 
     CompilationUnitTree root(Path file) {
@@ -153,7 +176,7 @@ class CompileBatch implements AutoCloseable {
             byUri.put(params.uri, params);
         }
         // Convert diags
-        for (var d : parent.diags) {
+        for (var d : diags) {
             var source = d.getSource();
             if (source == null) continue;
             var uri = source.toUri();
@@ -193,17 +216,6 @@ class CompileBatch implements AutoCloseable {
         }
     }
 
-    private static Position position(String content, long offset) {
-        int line = 0, column = 0;
-        for (int i = 0; i < offset; i++) {
-            if (content.charAt(i) == '\n') {
-                line++;
-                column = 0;
-            } else column++;
-        }
-        return new Position(line, column);
-    }
-
     private org.javacs.lsp.Diagnostic warnUnused(Element unusedEl) {
         var path = trees.getPath(unusedEl);
         var root = path.getCompilationUnit();
@@ -222,7 +234,8 @@ class CompileBatch implements AutoCloseable {
             end = offset + name.length();
         }
         var d = new org.javacs.lsp.Diagnostic();
-        d.range = new Range(position(contents, start), position(contents, end));
+        var lines = FileStore.lineIndex(file);
+        d.range = new Range(lines.position(start), lines.position(end));
         d.message = String.format("`%s` is not used", unusedEl.getSimpleName());
         d.code = "unused";
         if (unusedEl instanceof ExecutableElement || unusedEl instanceof TypeElement) {
@@ -238,9 +251,9 @@ class CompileBatch implements AutoCloseable {
         // Check that error is in an open file
         var file = Paths.get(java.getSource().toUri());
         // Find start and end position
-        var content = FileStore.contents(file);
-        var start = position(content, java.getStartPosition());
-        var end = position(content, java.getEndPosition());
+        var lines = FileStore.lineIndex(file);
+        var start = lines.position(java.getStartPosition());
+        var end = lines.position(java.getEndPosition());
         var d = new org.javacs.lsp.Diagnostic();
         d.severity = severity(java.getKind());
         d.range = new Range(start, end);
@@ -321,7 +334,7 @@ class CompileBatch implements AutoCloseable {
         var contents = contents(root);
         // Check diagnostics for missing imports
         var unresolved = new HashSet<String>();
-        for (var d : parent.diags) {
+        for (var d : diags) {
             if (d.getCode().equals("compiler.err.cant.resolve.location")
                     && d.getSource().toUri().equals(file.toUri())) {
                 long start = d.getStartPosition(), end = d.getEndPosition();
@@ -332,11 +345,8 @@ class CompileBatch implements AutoCloseable {
             }
         }
         // Look at imports in other classes to help us guess how to fix imports
-        // TODO cache parsed imports on a per-file basis
-        var sourcePathImports = StringSearch.existingImports(FileStore.all());
-        var classes = new HashSet<String>();
-        classes.addAll(parent.jdkClasses);
-        classes.addAll(parent.classPathClasses);
+        var sourcePathImports = WordIndex.existingImports();
+        var classes = List.of(parent.jdkClassNames, parent.classPathClassNames);
         var fixes = StringSearch.resolveSymbols(unresolved, sourcePathImports, classes);
         // Figure out which existing imports are actually used
         var finder = new FindUsedImports(borrow.task, root);
@@ -367,7 +377,7 @@ class CompileBatch implements AutoCloseable {
     }
 
     private boolean hasErrors(Path file) {
-        for (var d : parent.diags) {
+        for (var d : diags) {
             if (d.getKind() != javax.tools.Diagnostic.Kind.ERROR) continue;
             if (!d.getSource().toUri().equals(file.toUri())) continue;
             if (d.getCode().equals("compiler.err.cant.resolve.location")) continue;
@@ -532,7 +542,7 @@ class CompileBatch implements AutoCloseable {
         var ptr = new Ptr(e);
         var file = parent.docs().find(ptr);
         if (!file.isPresent()) return false;
-        var parse = Parser.parseJavaFileObject(file.get());
+        var parse = Parser.parseDocFile(file.get());
         // Find the tree
         var path = parse.fuzzyFind(ptr);
         if (!path.isPresent()) return false;
@@ -1163,26 +1173,17 @@ class CompileBatch implements AutoCloseable {
         var startsWithUpperCase = partialName.length() > 0 && Character.isUpperCase(partialName.charAt(0));
         if (startsWithUpperCase) {
             var packageName = Objects.toString(root.getPackageName(), "");
-            Predicate<String> matchesPartialName =
-                    qualifiedName -> {
-                        var className = StringSearch.lastName(qualifiedName);
-                        return StringSearch.matchesPartialName(className, partialName);
-                    };
-            // Check JDK
-            LOG.info("...checking JDK");
-            for (var c : parent.jdkClasses) {
-                if (tooManyItems(result.size())) return result;
-                if (!matchesPartialName.test(c)) continue;
-                if (isSamePackage(c, packageName) || isPublicClassFile(c)) {
-                    result.add(classNameCompletion(c, isImported(file, c)));
+            // Rank JDK and classpath classes together, and keep the best ones that are accessible
+            LOG.info("...checking JDK and classpath");
+            var top = new FuzzyMatch.Top<String>(MAX_CLASS_CANDIDATES);
+            for (var index : List.of(parent.jdkClassNames, parent.classPathClassNames)) {
+                for (var c : matchingClassNames(index, partialName)) {
+                    top.add(c, FuzzyMatch.score(StringSearch.lastName(c), partialName));
                 }
             }
-            // Check classpath
-            LOG.info("...checking classpath");
             var classPathNames = new HashSet<String>();
-            for (var c : parent.classPathClasses) {
+            for (var c : top.best()) {
                 if (tooManyItems(result.size())) return result;
-                if (!matchesPartialName.test(c)) continue;
                 if (isSamePackage(c, packageName) || isPublicClassFile(c)) {
                     result.add(classNameCompletion(c, isImported(file, c)));
                     classPathNames.add(c);
@@ -1205,6 +1206,13 @@ class CompileBatch implements AutoCloseable {
         return result;
     }
 
+    /** Classes whose simple name starts with `partialName`, followed by the ones that match it hump by hump */
+    private static Collection<String> matchingClassNames(ClassNameIndex index, String partialName) {
+        var result = new LinkedHashSet<String>(index.prefix(partialName));
+        result.addAll(index.camelCase(partialName));
+        return result;
+    }
+
     private boolean isSamePackage(String className, String fromPackage) {
         return StringSearch.mostName(className).equals(fromPackage);
     }
@@ -1212,11 +1220,11 @@ class CompileBatch implements AutoCloseable {
     private boolean isPublicClassFile(String className) {
         try {
             var platform =
-                    parent.fileManager.getJavaFileForInput(
+                    borrow.fileManager.getJavaFileForInput(
                             StandardLocation.PLATFORM_CLASS_PATH, className, JavaFileObject.Kind.CLASS);
             if (platform != null) return isPublic(platform);
             var classpath =
-                    parent.fileManager.getJavaFileForInput(
+                    borrow.fileManager.getJavaFileForInput(
                             StandardLocation.CLASS_PATH, className, JavaFileObject.Kind.CLASS);
             if (classpath != null) return isPublic(classpath);
             return false;
@@ -31,7 +31,7 @@ public class Docs {
         }
     }
 
-    public Optional<JavaFileObject> find(Ptr ptr) {
+    public synchronized Optional<JavaFileObject> find(Ptr ptr) {
         LOG.info(String.format("...looking for file for `%s`...", ptr));
 
         // Find the file el was declared in
@@ -6,6 +6,8 @@ import java.nio.file.*;
 import java.nio.file.attribute.*;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import org.javacs.lsp.DidChangeTextDocumentParams;
@@ -17,11 +19,12 @@ class FileStore {
 
     private static final Set<Path> workspaceRoots = new HashSet<>();
 
-    private static final Map<Path, VersionedContent> activeDocuments = new HashMap<>();
+    // Requests run concurrently on worker threads, and some of them lazily fill in javaSources, so these are concurrent
+    private static final Map<Path, VersionedContent> activeDocuments = new ConcurrentHashMap<>();
 
     /** javaSources[file] is the javaSources time of a .java source file. */
     // TODO organize by package name for speed of list(...)
-    private static final TreeMap<Path, Info> javaSources = new TreeMap<>();
+    private static final ConcurrentSkipListMap<Path, Info> javaSources = new ConcurrentSkipListMap<>();
 
     private static class Info {
         final Instant modified;
@@ -33,6 +36,9 @@ class FileStore {
         }
     }
 
+    /** The info of a file that has been deleted */
+    private static final Info MISSING = new Info(Instant.EPOCH, "");
+
     static void setWorkspaceRoots(Set<Path> newRoots) {
         newRoots = normalize(newRoots);
         for (var root : workspaceRoots) {
@@ -90,9 +96,9 @@ class FileStore {
 
     static List<Path> list(String packageName) {
         var list = new ArrayList<Path>();
-        for (var file : javaSources.keySet()) {
-            if (javaSources.get(file).packageName.equals(packageName)) {
-                list.add(file);
+        for (var entry : javaSources.entrySet()) {
+            if (entry.getValue().packageName.equals(packageName)) {
+                list.add(entry.getKey());
             }
         }
         return list;
@@ -111,6 +117,8 @@ class FileStore {
 
     private static Path sourceRoot(Path file) {
         var info = javaSources.get(file);
+        // file may have been deleted by another request since we listed it
+        if (info == null) return null;
         var parts = info.packageName.split("\\.");
         var dir = file.getParent();
         for (var i = parts.length - 1; i >= 0; i--) {
@@ -130,24 +138,27 @@ class FileStore {
 
     static Instant modified(Path file) {
         // If file is open, use last in-memory modification time
-        if (activeDocuments.containsKey(file.toUri())) {
-            return activeDocuments.get(file.toUri()).modified;
+        var active = activeDocuments.get(file);
+        if (active != null) {
+            return active.modified;
         }
-        // If we've never checked before, look up modified time on disk
-        if (!javaSources.containsKey(file)) {
-            readInfoFromDisk(file);
-        }
-        // Look up modified time from cache
-        return javaSources.get(file).modified;
+        return info(file).modified;
     }
 
     static String packageName(Path file) {
-        // If we've never checked before, look up package name on disk
-        if (!javaSources.containsKey(file)) {
-            readInfoFromDisk(file);
+        return info(file).packageName;
+    }
+
+    /**
+     * The cached info about `file`, read from disk if we've never checked before. Other requests can close or delete
+     * `file` at any time, so each map is read once rather than checked and then read.
+     */
+    private static Info info(Path file) {
+        var info = javaSources.get(file);
+        if (info == null) {
+            info = readInfoFromDisk(file);
         }
-        // Look up package name from cache
-        return javaSources.get(file).packageName;
+        return info;
     }
 
     static String suggestedPackageName(Path file) {
@@ -189,16 +200,22 @@ class FileStore {
 
     static void externalDelete(Path file) {
         javaSources.remove(file);
+        WordIndex.invalidate(file);
     }
 
-    private static void readInfoFromDisk(Path file) {
+    /** Read the info of `file` from disk and cache it, or forget `file` and return MISSING if it doesn't exist */
+    private static Info readInfoFromDisk(Path file) {
         try {
             var time = Files.getLastModifiedTime(file).toInstant();
             var packageName = StringSearch.packageName(file);
-            javaSources.put(file, new Info(time, packageName));
+            var info = new Info(time, packageName);
+            javaSources.put(file, info);
+            WordIndex.invalidate(file);
+            return info;
         } catch (NoSuchFileException e) {
             LOG.warning(e.getMessage());
             javaSources.remove(file);
+            return MISSING;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -208,7 +225,8 @@ class FileStore {
         if (!isJavaFile(params.textDocument.uri)) return;
         var document = params.textDocument;
         var file = Paths.get(document.uri);
-        activeDocuments.put(file, new VersionedContent(document.text, document.version));
+        activeDocuments.put(file, new VersionedContent(Rope.of(document.text), document.version));
+        WordIndex.invalidate(file);
     }
 
     static void change(DidChangeTextDocumentParams params) {
@@ -220,18 +238,20 @@ class FileStore {
             LOG.warning("Ignored change with version " + document.version + " <= " + existing.version);
             return;
         }
-        var newText = existing.content;
+        var newText = existing.text;
         for (var change : params.contentChanges) {
-            if (change.range == null) newText = change.text;
+            if (change.range == null) newText = Rope.of(change.text);
             else newText = patch(newText, change);
         }
         activeDocuments.put(file, new VersionedContent(newText, document.version));
+        WordIndex.invalidate(file);
     }
 
     static void close(DidCloseTextDocumentParams params) {
         if (!isJavaFile(params.textDocument.uri)) return;
         var file = Paths.get(params.textDocument.uri);
         activeDocuments.remove(file);
+        WordIndex.invalidate(file);
     }
 
     static Set<Path> activeDocuments() {
@@ -239,16 +259,18 @@ class FileStore {
     }
 
     static int version(Path file) {
-        if (!activeDocuments.containsKey(file)) return -1;
-        return activeDocuments.get(file).version;
+        var active = activeDocuments.get(file);
+        if (active == null) return -1;
+        return active.version;
     }
 
     static String contents(Path file) {
         if (!isJavaFile(file)) {
             throw new RuntimeException(file + " is not a java file");
         }
-        if (activeDocuments.containsKey(file)) {
-            return activeDocuments.get(file).content;
+        var active = activeDocuments.get(file);
+        if (active != null) {
+            return active.content();
         }
         try {
             // TODO I think there is a faster path here
@@ -262,10 +284,9 @@ class FileStore {
     }
 
     static InputStream inputStream(Path file) {
-        var uri = file.toUri();
-        if (activeDocuments.containsKey(uri)) {
-            var string = activeDocuments.get(uri).content;
-            var bytes = string.getBytes();
+        var active = activeDocuments.get(file);
+        if (active != null) {
+            var bytes = active.content().getBytes();
             return new ByteArrayInputStream(bytes);
         }
         try {
@@ -280,10 +301,9 @@ class FileStore {
     }
 
     static BufferedReader bufferedReader(Path file) {
-        var uri = file.toUri();
-        if (activeDocuments.containsKey(uri)) {
-            var string = activeDocuments.get(uri).content;
-            return new BufferedReader(new StringReader(string));
+        var active = activeDocuments.get(file);
+        if (active != null) {
+            return new BufferedReader(new StringReader(active.content()));
         }
         try {
             return Files.newBufferedReader(file);
@@ -299,55 +319,31 @@ class FileStore {
         return bufferedReader(file);
     }
 
-    /** Convert from line/column (1-based) to offset (0-based) */
-    static int offset(String contents, int line, int column) {
-        line--;
-        column--;
-        int cursor = 0;
-        while (line > 0) {
-            if (contents.charAt(cursor) == '\n') {
-                line--;
-            }
-            cursor++;
+    private static final Cache<Void, LineIndex> cacheLineIndex = new Cache<>();
+
+    /** The line-start table of the current version of `file` */
+    static LineIndex lineIndex(Path file) {
+        var active = activeDocuments.get(file);
+        if (active != null) {
+            return active.lineIndex();
         }
-        return cursor + column;
+        var cached = cacheLineIndex.find(file, null);
+        if (cached.isPresent()) return cached.get();
+        var index = LineIndex.of(contents(file));
+        cacheLineIndex.load(file, null, index);
+        return index;
     }
 
-    private static String patch(String sourceText, TextDocumentContentChangeEvent change) {
-        try {
-            var range = change.range;
-            var reader = new BufferedReader(new StringReader(sourceText));
-            var writer = new StringWriter();
-
-            // Skip unchanged lines
-            int line = 0;
-
-            while (line < range.start.line) {
-                writer.write(reader.readLine() + '\n');
-                line++;
-            }
-
-            // Skip unchanged chars
-            for (int character = 0; character < range.start.character; character++) {
-                writer.write(reader.read());
-            }
-
-            // Write replacement text
-            writer.write(change.text);
-
-            // Skip replaced text
-            reader.skip(change.rangeLength);
-
-            // Write remaining text
-            while (true) {
-                int next = reader.read();
+    /** Convert from line/column (1-based) to offset (0-based) in the current version of `file` */
+    static int offset(Path file, int line, int column) {
+        return lineIndex(file).offset(line - 1, column - 1);
+    }
 
-                if (next == -1) return writer.toString();
-                else writer.write(next);
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    private static Rope patch(Rope sourceText, TextDocumentContentChangeEvent change) {
+        var range = change.range;
+        var start = sourceText.offset(range.start.line, range.start.character);
+        var end = sourceText.offset(range.end.line, range.end.character);
+        return sourceText.replace(start, Math.max(start, end), change.text);
     }
 
     static boolean isJavaFile(Path file) {
@@ -387,13 +383,31 @@ class FileStore {
 }
 
 class VersionedContent {
-    final String content;
+    /** text is an immutable snapshot, so readers can use it while later versions are being edited */
+    final Rope text;
     final int version;
     final Instant modified = Instant.now();
 
-    VersionedContent(String content, int version) {
-        Objects.requireNonNull(content, "content is null");
-        this.content = content;
+    VersionedContent(Rope text, int version) {
+        Objects.requireNonNull(text, "text is null");
+        this.text = text;
         this.version = version;
     }
+
+    /** lines is the line-start table of text, built the first time it is needed */
+    private volatile LineIndex lines;
+
+    /** The text of this version as a String, which is only built the first time it is needed */
+    String content() {
+        return text.toString();
+    }
+
+    LineIndex lineIndex() {
+        var result = lines;
+        if (result == null) {
+            result = LineIndex.of(content());
+            lines = result;
+        }
+        return result;
+    }
 }
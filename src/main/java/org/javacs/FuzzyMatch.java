@@ -0,0 +1,177 @@
+package org.javacs;
+
+import java.util.*;
+
+/**
+ * FuzzyMatch scores how well an identifier matches what the user has typed so far. Each character of the query must
+ * either continue the previous match, or start a word of the candidate, where words start at upper-case letters and
+ * after `_` or `$`. For example, `fb` matches `FooBar` and `foo_bar`, but not `Foobar`. Prefix matches, matches at the
+ * start of words, long contiguous runs and shorter candidates score higher.
+ */
+class FuzzyMatch {
+    /** The score of a candidate that doesn't match the query at all */
+    static final int NO_MATCH = Integer.MIN_VALUE;
+
+    private static final int MATCH = 10, WORD_START = 15, CONSECUTIVE = 5, EXACT_CASE = 1, PREFIX = 20;
+
+    /**
+     * Score `candidate` against `query`, or return NO_MATCH. The common cases don't allocate: most candidates are
+     * rejected because `query` isn't a subsequence of them, and most matches are found by taking each letter as soon
+     * as possible.
+     */
+    static int score(CharSequence candidate, CharSequence query) {
+        if (query.length() == 0) return -candidate.length();
+        var best = bestStart(candidate, query, null);
+        if (best != NO_MATCH || !isSubsequence(candidate, query)) return best;
+        // Taking letters greedily can use up a letter that a later word needed, like the `b` of `AbXBc` for `abc`,
+        // so find the letters that can still lead to a match and try again, only taking those
+        return bestStart(candidate, query, feasible(candidate, query));
+    }
+
+    /** Try starting the match at each word, so `list` finds the `List` in `LinkedList` */
+    private static int bestStart(CharSequence candidate, CharSequence query, boolean[] feasible) {
+        var best = NO_MATCH;
+        for (var start = 0; start < candidate.length(); start++) {
+            if (!isWordStart(candidate, start) || !sameLetter(query.charAt(0), candidate.charAt(start))) continue;
+            if (!isFeasible(feasible, candidate, 0, start)) continue;
+            best = Math.max(best, scoreFrom(candidate, query, start, feasible));
+        }
+        return best;
+    }
+
+    private static int scoreFrom(CharSequence candidate, CharSequence query, int start, boolean[] feasible) {
+        var score = start == 0 ? PREFIX : 0;
+        var c = start;
+        var run = 0;
+        for (var q = 0; q < query.length(); q++) {
+            var f = query.charAt(q);
+            if (c < candidate.length()
+                    && sameLetter(f, candidate.charAt(c))
+                    && isFeasible(feasible, candidate, q, c)) {
+                // Continue the current run of matching characters
+                run++;
+                score += MATCH + CONSECUTIVE * (run - 1);
+                if (isWordStart(candidate, c)) score += WORD_START;
+            } else {
+                // Skip to the next word that starts with f
+                while (c < candidate.length()
+                        && !(isWordStart(candidate, c)
+                                && sameLetter(f, candidate.charAt(c))
+                                && isFeasible(feasible, candidate, q, c))) {
+                    c++;
+                }
+                if (c == candidate.length()) return NO_MATCH;
+                run = 1;
+                score += MATCH + WORD_START;
+            }
+            if (f == candidate.charAt(c)) score += EXACT_CASE;
+            c++;
+        }
+        // Prefer shorter candidates, which have fewer characters the user hasn't typed
+        return score - (candidate.length() - query.length());
+    }
+
+    /** Does `candidate` contain the letters of `query` in order, ignoring where words start? */
+    private static boolean isSubsequence(CharSequence candidate, CharSequence query) {
+        var q = 0;
+        for (var c = 0; c < candidate.length() && q < query.length(); c++) {
+            if (sameLetter(query.charAt(q), candidate.charAt(c))) q++;
+        }
+        return q == query.length();
+    }
+
+    /**
+     * feasible[q * candidate.length() + c] is true if the rest of `query` can be matched after matching `query[q]` to
+     * `candidate[c]`, by continuing at `c + 1` or skipping to a later word.
+     */
+    private static boolean[] feasible(CharSequence candidate, CharSequence query) {
+        var n = candidate.length();
+        var feasible = new boolean[query.length() * n];
+        for (var q = query.length() - 1; q >= 0; q--) {
+            var last = q == query.length() - 1;
+            // Is there a word after c where query[q + 1] can be matched?
+            var laterWord = false;
+            for (var c = n - 1; c >= 0; c--) {
+                var next = c + 1 < n && !last && feasible[(q + 1) * n + c + 1];
+                if (next && isWordStart(candidate, c + 1)) laterWord = true;
+                if (!sameLetter(query.charAt(q), candidate.charAt(c))) continue;
+                feasible[q * n + c] = last || next || laterWord;
+            }
+        }
+        return feasible;
+    }
+
+    private static boolean isFeasible(boolean[] feasible, CharSequence candidate, int q, int c) {
+        return feasible == null || feasible[q * candidate.length() + c];
+    }
+
+    static boolean matches(CharSequence candidate, CharSequence query) {
+        return score(candidate, query) != NO_MATCH;
+    }
+
+    private static boolean sameLetter(char a, char b) {
+        return a == b || Character.toLowerCase(a) == Character.toLowerCase(b);
+    }
+
+    private static boolean isWordStart(CharSequence candidate, int i) {
+        var c = candidate.charAt(i);
+        if (c == '_' || c == '$') return false;
+        if (i == 0 || Character.isUpperCase(c)) return true;
+        var before = candidate.charAt(i - 1);
+        return before == '_' || before == '$';
+    }
+
+    /**
+     * Top keeps the `limit` highest-scoring items it has been offered in a bounded heap, so the best matches can be
+     * picked out of thousands of candidates without sorting all of them. Items with equal scores are kept in the order
+     * they were offered.
+     */
+    static class Top<T> {
+        private final int limit;
+        private final PriorityQueue<Ranked<T>> heap;
+        private int added;
+
+        private static class Ranked<T> {
+            final T item;
+            final int score, order;
+
+            Ranked(T item, int score, int order) {
+                this.item = item;
+                this.score = score;
+                this.order = order;
+            }
+        }
+
+        /** Worst item first: lowest score, then most recently added */
+        private static final Comparator<Ranked<?>> WORST_FIRST =
+                Comparator.<Ranked<?>>comparingInt(r -> r.score).thenComparingInt(r -> -r.order);
+
+        Top(int limit) {
+            this.limit = limit;
+            this.heap = new PriorityQueue<>(WORST_FIRST);
+        }
+
+        /** Keep `item` if it matched and it's better than the worst item so far, or there's still room */
+        void add(T item, int score) {
+            if (score == NO_MATCH || limit == 0) return;
+            if (heap.size() == limit) {
+                if (heap.peek().score >= score) return;
+                heap.poll();
+            }
+            heap.add(new Ranked<>(item, score, added++));
+        }
+
+        int size() {
+            return heap.size();
+        }
+
+        /** The items kept so far, best first */
+        List<T> best() {
+            var sorted = new ArrayList<Ranked<T>>(heap);
+            sorted.sort(WORST_FIRST.reversed());
+            var result = new ArrayList<T>(sorted.size());
+            for (var r : sorted) result.add(r.item);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.javacs;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * GradleCacheIndex maps (group, artifact, version, classifier) to a jar in the gradle module cache, which is laid
+ * out as caches/modules-*&#47;files-*&#47;group/artifact/version/hash/artifact-version[-classifier].jar. The cache is
+ * walked once, in parallel over its groups, and the index is saved so the next session can load it instead of walking
+ * again. If an artifact isn't in a saved index, or its jar is gone, the cache is walked again, since gradle may have
+ * downloaded or cleaned up jars since the index was saved.
+ */
+class GradleCacheIndex {
+    private static final int MAGIC = 0x4a534743, VERSION = 1;
+
+    private final Path gradleHome, storage;
+
+    /** jars[group:artifact:version:classifier] is a jar in the gradle cache, or null if we haven't loaded jars yet */
+    private Map<String, Path> jars;
+
+    /** Have we walked the gradle cache in this session, so that walking again won't find anything new? */
+    private boolean fresh;
+
+    GradleCacheIndex(Path gradleHome, Path storage) {
+        this.gradleHome = gradleHome;
+        this.storage = storage;
+    }
+
+    /** The default location of the index of `gradleHome`, which is shared by every workspace */
+    static Path defaultStorage(Path gradleHome) {
+        return CacheDirectory.forPath("gradle", gradleHome).resolve("jars");
+    }
+
+    /** The jar for `group:artifact:version`, where `classifier` is empty or something like `sources` */
+    synchronized Optional<Path> find(String group, String artifact, String version, String classifier) {
+        var key = key(group, artifact, version, classifier);
+        if (jars == null) {
+            jars = load().orElseGet(this::rebuild);
+        }
+        var found = jars.get(key);
+        if ((found == null || !Files.exists(found)) && !fresh) {
+            jars = rebuild();
+            found = jars.get(key);
+        }
+        if (found == null || !Files.exists(found)) return Optional.empty();
+        return Optional.of(found);
+    }
+
+    private static String key(String group, String artifact, String version, String classifier) {
+        return group + ":" + artifact + ":" + version + ":" + classifier;
+    }
+
+    private Map<String, Path> rebuild() {
+        var started = System.nanoTime();
+        var jars = walk(gradleHome.resolve("caches"));
+        var elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        LOG.info(String.format("Indexed %d jars in %s in %d ms", jars.size(), gradleHome, elapsedMs));
+        fresh = true;
+        save(jars);
+        return jars;
+    }
+
+    /** Walk caches/modules-*&#47;files-*&#47;group in parallel, indexing the jars under each group */
+    private static Map<String, Path> walk(Path caches) {
+        var groups = new ArrayList<Path>();
+        for (var modules : list(caches)) {
+            if (!modules.getFileName().toString().startsWith("modules-")) continue;
+            for (var files : list(modules)) {
+                if (!files.getFileName().toString().startsWith("files-")) continue;
+                groups.addAll(list(files));
+            }
+        }
+        var jars = new ConcurrentHashMap<String, Path>();
+        groups.parallelStream().forEach(group -> indexGroup(group, jars));
+        return jars;
+    }
+
+    private static void indexGroup(Path group, Map<String, Path> jars) {
+        var groupId = group.getFileName().toString();
+        for (var artifact : list(group)) {
+            var artifactId = artifact.getFileName().toString();
+            for (var version : list(artifact)) {
+                var v = version.getFileName().toString();
+                var prefix = artifactId + "-" + v;
+                for (var hash : list(version)) {
+                    for (var jar : list(hash)) {
+                        var name = jar.getFileName().toString();
+                        if (!name.startsWith(prefix) || !name.endsWith(".jar")) continue;
+                        var rest = name.substring(prefix.length(), name.length() - ".jar".length());
+                        String classifier;
+                        if (rest.isEmpty()) classifier = "";
+                        else if (rest.startsWith("-")) classifier = rest.substring(1);
+                        else continue;
+                        // If the same jar is in several hash directories, pick one consistently
+                        jars.merge(key(groupId, artifactId, v, classifier), jar, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<Path> list(Path dir) {
+        if (!Files.isDirectory(dir)) return List.of();
+        try (Stream<Path> stream = Files.list(dir)) {
+            return stream.collect(Collectors.toList());
+        } catch (IOException e) {
+            LOG.warning(String.format("Failed to list %s: %s", dir, e.getMessage()));
+            return List.of();
+        }
+    }
+
+    private Optional<Map<String, Path>> load() {
+        if (!Files.exists(storage)) return Optional.empty();
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(storage)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOG.warning(String.format("Ignoring gradle cache index %s from an incompatible version", storage));
+                return Optional.empty();
+            }
+            if (!in.readUTF().equals(gradleHome.toAbsolutePath().toString())) {
+                LOG.info(String.format("Ignoring gradle cache index %s of a different gradle home", storage));
+                return Optional.empty();
+            }
+            var count = in.readInt();
+            var jars = new HashMap<String, Path>();
+            for (var i = 0; i < count; i++) {
+                var key = in.readUTF();
+                jars.put(key, Paths.get(in.readUTF()));
+            }
+            LOG.info(String.format("Loaded %d gradle jars from %s", jars.size(), storage));
+            return Optional.of(jars);
+        } catch (IOException e) {
+            LOG.warning(String.format("Failed to load gradle cache index from %s: %s", storage, e.getMessage()));
+            return Optional.empty();
+        }
+    }
+
+    private void save(Map<String, Path> jars) {
+        try {
+            CacheDirectory.writeAtomically(
+                    storage,
+                    out -> {
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        out.writeUTF(gradleHome.toAbsolutePath().toString());
+                        out.writeInt(jars.size());
+                        for (var entry : jars.entrySet()) {
+                            out.writeUTF(entry.getKey());
+                            out.writeUTF(entry.getValue().toString());
+                        }
+                    });
+        } catch (IOException e) {
+            LOG.warning(String.format("Failed to save gradle cache index to %s: %s", storage, e.getMessage()));
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
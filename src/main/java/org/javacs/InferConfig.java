@@ -1,13 +1,16 @@
 package org.javacs;
 
 import com.google.devtools.build.lib.analysis.AnalysisProtos;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileSystems;
+import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
@@ -22,6 +25,10 @@ class InferConfig {
     private final Path mavenHome;
     /** Location of the gradle cache, usually ~/.gradle */
     private final Path gradleHome;
+    /** Index of the jars in gradleHome, created on first use */
+    private GradleCacheIndex gradleIndex;
+    /** Has mvn or bazel failed, so that classPath() or buildDocPath() returned less than it should have? */
+    private volatile boolean buildToolFailed;
 
     InferConfig(Path workspaceRoot, Collection<String> externalDependencies, Path mavenHome, Path gradleHome) {
         this.workspaceRoot = workspaceRoot;
@@ -66,17 +73,36 @@ class InferConfig {
         // Maven
         var pomXml = workspaceRoot.resolve("pom.xml");
         if (Files.exists(pomXml)) {
-            return mvnDependencies(pomXml, "dependency:list");
+            var resolved = new MavenResolver(mavenHome.resolve("repository")).classPath(pomXml);
+            if (resolved.isPresent()) return resolved.get();
+            return orFailed(mvnDependencies(pomXml, "dependency:list"));
         }
 
         // Bazel
         if (Files.exists(workspaceRoot.resolve("WORKSPACE"))) {
-            return bazelClasspath();
+            return orFailed(bazelClasspath());
         }
 
         return Collections.emptySet();
     }
 
+    /**
+     * Did mvn or bazel fail while finding the class path or doc path? If so, the paths are incomplete, and shouldn't be
+     * saved for the next session.
+     */
+    boolean buildToolFailed() {
+        return buildToolFailed;
+    }
+
+    /** The paths a build tool found, or nothing if it failed, in which case remember that it failed */
+    private Set<Path> orFailed(Optional<Set<Path>> paths) {
+        if (paths.isEmpty()) {
+            buildToolFailed = true;
+            return Set.of();
+        }
+        return paths.get();
+    }
+
     /** Find source .jar files in local maven repository. */
     Set<Path> buildDocPath() {
         // externalDependencies
@@ -97,12 +123,14 @@ class InferConfig {
         // Maven
         var pomXml = workspaceRoot.resolve("pom.xml");
         if (Files.exists(pomXml)) {
-            return mvnDependencies(pomXml, "dependency:sources");
+            var resolved = new MavenResolver(mavenHome.resolve("repository")).docPath(pomXml);
+            if (resolved.isPresent()) return resolved.get();
+            return orFailed(mvnDependencies(pomXml, "dependency:sources"));
         }
 
         // Bazel
         if (Files.exists(workspaceRoot.resolve("WORKSPACE"))) {
-            return bazelDeps("srcjar");
+            return orFailed(bazelDeps("srcjar"));
             // TODO proto source jars
         }
 
@@ -133,34 +161,26 @@ class InferConfig {
     }
 
     private Path findGradleJar(Artifact artifact, boolean source) {
-        // Search for caches/modules-*/files-*/groupId/artifactId/version/*/artifactId-version[-sources].jar
-        var base = gradleHome.resolve("caches");
-        var pattern =
-                "glob:"
-                        + String.join(
-                                File.separator,
-                                base.toString(),
-                                "modules-*",
-                                "files-*",
-                                artifact.groupId,
-                                artifact.artifactId,
-                                artifact.version,
-                                "*",
-                                fileName(artifact, source));
-        var match = FileSystems.getDefault().getPathMatcher(pattern);
+        var classifier = source ? "sources" : "";
+        return gradleIndex()
+                .find(artifact.groupId, artifact.artifactId, artifact.version, classifier)
+                .orElse(NOT_FOUND);
+    }
 
-        try {
-            return Files.walk(base, 7).filter(match::matches).findFirst().orElse(NOT_FOUND);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /** The index of the gradle cache, which is only loaded if we actually need to look up an artifact */
+    private synchronized GradleCacheIndex gradleIndex() {
+        if (gradleIndex == null) {
+            gradleIndex = new GradleCacheIndex(gradleHome, GradleCacheIndex.defaultStorage(gradleHome));
         }
+        return gradleIndex;
     }
 
     private String fileName(Artifact artifact, boolean source) {
         return artifact.artifactId + '-' + artifact.version + (source ? "-sources" : "") + ".jar";
     }
 
-    static Set<Path> mvnDependencies(Path pomXml, String goal) {
+    /** The jars that `mvn goal` lists, or empty if mvn fails */
+    static Optional<Set<Path>> mvnDependencies(Path pomXml, String goal) {
         Objects.requireNonNull(pomXml, "pom.xml path is null");
         try {
             // TODO consider using mvn valide dependency:copy-dependencies -DoutputDirectory=??? instead
@@ -173,36 +193,52 @@ class InferConfig {
                 "-DincludeScope=test",
                 "-DoutputAbsoluteArtifactFilename=true",
             };
-            var output = Files.createTempFile("java-language-server-maven-output", ".txt");
-            LOG.info("Running " + String.join(" ", command) + " ...");
-            var workingDirectory = pomXml.toAbsolutePath().getParent().toFile();
-            var process =
-                    new ProcessBuilder()
-                            .command(command)
-                            .directory(workingDirectory)
-                            .redirectError(ProcessBuilder.Redirect.INHERIT)
-                            .redirectOutput(output.toFile())
-                            .start();
-            // Wait for process to exit
-            var result = process.waitFor();
-            if (result != 0) {
-                LOG.severe("`" + String.join(" ", command) + "` returned " + result);
-                return Set.of();
-            }
-            // Read output
+            var workingDirectory = pomXml.toAbsolutePath().getParent();
             var dependencies = new HashSet<Path>();
-            for (var line : Files.readAllLines(output)) {
-                var jar = readDependency(line);
-                if (jar != NOT_FOUND) {
-                    dependencies.add(jar);
-                }
+            // Match dependencies as maven prints them, rather than waiting for it to exit
+            Consumer<String> onLine =
+                    line -> {
+                        var jar = readDependency(line);
+                        if (jar != NOT_FOUND) {
+                            dependencies.add(jar);
+                        }
+                    };
+            if (!runAndReadLines(command, workingDirectory, onLine)) {
+                return Optional.empty();
             }
-            return dependencies;
+            return Optional.of(dependencies);
         } catch (InterruptedException | IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Run `command` in `directory`, passing each line it prints to stdout to `onLine` as soon as it's printed. Returns
+     * true if `command` succeeded.
+     */
+    private static boolean runAndReadLines(String[] command, Path directory, Consumer<String> onLine)
+            throws IOException, InterruptedException {
+        LOG.info("Running " + String.join(" ", command) + " ...");
+        var process =
+                new ProcessBuilder()
+                        .command(command)
+                        .directory(directory.toFile())
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+        try (var lines = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            for (var line = lines.readLine(); line != null; line = lines.readLine()) {
+                onLine.accept(line);
+            }
+        }
+        // Wait for process to exit
+        var result = process.waitFor();
+        if (result != 0) {
+            LOG.severe("`" + String.join(" ", command) + "` returned " + result);
+            return false;
+        }
+        return true;
+    }
+
     private static final Pattern DEPENDENCY =
             Pattern.compile("^\\[INFO\\]\\s+(.*:.*:.*:.*:.*):(/.*?)( -- module .*)?$");
 
@@ -238,7 +274,8 @@ class InferConfig {
         return null;
     }
 
-    private Set<Path> bazelClasspath() {
+    /** The class path of every java target in the workspace, or empty if bazel fails */
+    private Optional<Set<Path>> bazelClasspath() {
         try {
             // Run bazel as a subprocess
             String[] command = {
@@ -247,23 +284,28 @@ class InferConfig {
                 "--output=proto",
                 "mnemonic(Javac, kind(java_library, ...) union kind(java_test, ...) union kind(java_binary, ...))"
             };
-            var output = Files.createTempFile("java-language-server-bazel-output", ".txt");
             LOG.info("Running " + String.join(" ", command) + " ...");
             var process =
                     new ProcessBuilder()
                             .command(command)
                             .directory(workspaceRoot.toFile())
                             .redirectError(ProcessBuilder.Redirect.INHERIT)
-                            .redirectOutput(output.toFile())
                             .start();
+            // Parse the action graph straight from bazel's output, as it's printed
+            AnalysisProtos.ActionGraphContainer container = null;
+            IOException parseError = null;
+            try (var output = new BufferedInputStream(process.getInputStream())) {
+                container = AnalysisProtos.ActionGraphContainer.parseFrom(output);
+            } catch (IOException e) {
+                parseError = e;
+            }
             // Wait for process to exit
             var result = process.waitFor();
             if (result != 0) {
                 LOG.severe("`" + String.join(" ", command) + "` returned " + result);
-                return Set.of();
+                return Optional.empty();
             }
-            // Read output
-            var container = AnalysisProtos.ActionGraphContainer.parseFrom(Files.newInputStream(output));
+            if (parseError != null) throw parseError;
             var argumentPaths = new HashSet<String>();
             var outputIds = new HashSet<String>();
             for (var action : container.getActionsList()) {
@@ -296,41 +338,31 @@ class InferConfig {
                 LOG.info("...found bazel dependency " + relative);
                 classpath.add(absolute);
             }
-            return classpath;
+            return Optional.of(classpath);
         } catch (InterruptedException | IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private Set<Path> bazelDeps(String labelsFilter) {
+    /** The jars that match `labelsFilter` in the dependencies of the workspace, or empty if bazel fails */
+    private Optional<Set<Path>> bazelDeps(String labelsFilter) {
         try {
             // Run bazel as a subprocess
             var query = "labels(" + labelsFilter + ", deps(...))";
             String[] command = {"bazel", "query", query, "--output", "location"};
-            var output = Files.createTempFile("java-language-server-bazel-output", ".txt");
-            LOG.info("Running " + String.join(" ", command) + " ...");
-            var process =
-                    new ProcessBuilder()
-                            .command(command)
-                            .directory(workspaceRoot.toFile())
-                            .redirectError(ProcessBuilder.Redirect.INHERIT)
-                            .redirectOutput(output.toFile())
-                            .start();
-            // Wait for process to exit
-            var result = process.waitFor();
-            if (result != 0) {
-                LOG.severe("`" + String.join(" ", command) + "` returned " + result);
-                return Set.of();
-            }
-            // Read output
             var dependencies = new HashSet<Path>();
-            for (var line : Files.readAllLines(output)) {
-                var jar = findBazelJar(line);
-                if (jar != NOT_FOUND) {
-                    dependencies.add(jar);
-                }
+            // Match locations as bazel prints them, rather than waiting for it to exit
+            Consumer<String> onLine =
+                    line -> {
+                        var jar = findBazelJar(line);
+                        if (jar != NOT_FOUND) {
+                            dependencies.add(jar);
+                        }
+                    };
+            if (!runAndReadLines(command, workspaceRoot, onLine)) {
+                return Optional.empty();
             }
-            return dependencies;
+            return Optional.of(dependencies);
         } catch (InterruptedException | IOException e) {
             throw new RuntimeException(e);
         }
@@ -3,40 +3,57 @@ package org.javacs;
 import java.io.File;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javax.tools.*;
-import org.javacs.lsp.SymbolInformation;
 
 class JavaCompilerService {
     // Not modifiable! If you want to edit these, you need to create a new instance
-    final Set<Path> classPath, docPath;
+    final Set<Path> classPath;
     final Set<String> addExports;
-    final ReusableCompiler compiler = new ReusableCompiler();
-    final Docs docs;
+    // Each context in the pool gets its own file manager, so we don't repeatedly re-compile the same files.
+    // Files that aren't in the batch are served with their method bodies erased, so compilation is faster.
+    final ReusableCompiler compiler = new ReusableCompiler(() -> new SourceFileManager(true));
+    // Starts with only the JDK sources if the doc path is still being resolved
+    private volatile Docs docs;
     final Set<String> jdkClasses = ScanClassPath.jdkTopLevelClasses(), classPathClasses;
-    // Diagnostics from the last compilation task
-    final List<Diagnostic<? extends JavaFileObject>> diags = new ArrayList<>();
-    // Use the same file manager for multiple tasks, so we don't repeatedly re-compile the same files
-    // TODO intercept files that aren't in the batch and erase method bodies so compilation is faster
-    final SourceFileManager fileManager;
+    // Find classes by simple name, for completion and fixing imports
+    final ClassNameIndex jdkClassNames = ClassNameIndex.of(jdkClasses), classPathClassNames;
 
     JavaCompilerService(Set<Path> classPath, Set<Path> docPath, Set<String> addExports) {
+        this(classPath, CompletableFuture.completedFuture(docPath), addExports);
+    }
+
+    /** Start compiling with `classPath` right away, and add `docPath` to docs() once it has been resolved */
+    JavaCompilerService(Set<Path> classPath, CompletableFuture<Set<Path>> docPath, Set<String> addExports) {
         System.err.println("Class path:");
         for (var p : classPath) {
             System.err.println("  " + p);
         }
-        System.err.println("Doc path:");
-        for (var p : docPath) {
-            System.err.println("  " + p);
-        }
         // classPath can't actually be modified, because JavaCompiler remembers it from task to task
         this.classPath = Collections.unmodifiableSet(classPath);
-        this.docPath = Collections.unmodifiableSet(docPath);
         this.addExports = Collections.unmodifiableSet(addExports);
-        this.docs = new Docs(docPath);
+        if (docPath.isDone()) {
+            this.docs = docs(docPath.join());
+        } else {
+            this.docs = new Docs(Set.of());
+            docPath.whenComplete(
+                    (paths, error) -> {
+                        if (error != null) LOG.warning("Failed to resolve doc path: " + error);
+                        else this.docs = docs(paths);
+                    });
+        }
         this.classPathClasses = ScanClassPath.classPathTopLevelClasses(classPath);
-        this.fileManager = new SourceFileManager();
+        this.classPathClassNames = ClassNameIndex.of(classPathClasses);
+    }
+
+    private static Docs docs(Set<Path> docPath) {
+        System.err.println("Doc path:");
+        for (var p : docPath) {
+            System.err.println("  " + p);
+        }
+        return new Docs(docPath);
     }
 
     /** Combine source path or class path entries using the system separator, for example ':' in unix */
@@ -92,33 +109,5 @@ class JavaCompilerService {
         return new CompileBatch(this, moreSources);
     }
 
-    List<SymbolInformation> findSymbols(String query, int limit) {
-        LOG.info(String.format("Searching for `%s`...", query));
-        var result = new ArrayList<SymbolInformation>();
-        var files = FileStore.all();
-        var checked = 0;
-        var parsed = 0;
-        for (var file : files) {
-            checked++;
-            // First do a fast check if the query matches anything in a file
-            if (!StringSearch.containsWordMatching(file, query)) continue;
-            // Parse the file and check class members for matches
-            LOG.info(String.format("...%s contains text matches", file.getFileName()));
-            var parse = Parser.parseFile(file);
-            var symbols = parse.findSymbolsMatching(query);
-            parsed++;
-            // If we confirm matches, add them to the results
-            if (symbols.size() > 0) {
-                LOG.info(String.format("...found %d occurrences", symbols.size()));
-            }
-            result.addAll(symbols);
-            // If results are full, stop
-            if (result.size() >= limit) break;
-        }
-        LOG.info(String.format("Found %d matches in %d/%d/%d files", result.size(), checked, parsed, files.size()));
-
-        return result;
-    }
-
     private static final Logger LOG = Logger.getLogger("main");
 }
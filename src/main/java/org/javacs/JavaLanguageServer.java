@@ -8,7 +8,10 @@ import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Predicate;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.lang.model.element.*;
 import javax.tools.JavaFileObject;
@@ -19,27 +22,123 @@ class JavaLanguageServer extends LanguageServer {
     private Path workspaceRoot;
     private final LanguageClient client;
     private JavaCompilerService cacheCompiler;
-    private JsonObject cacheSettings;
-    private JsonObject settings = new JsonObject();
-
-    JavaCompilerService compiler() {
-        if (!settings.equals(cacheSettings)) {
-            LOG.info("Recreating compiler because\n\t" + settings + "\nis different than\n\t" + cacheSettings);
+    private volatile JsonObject cacheSettings;
+    private volatile JsonObject settings = new JsonObject();
+    private SymbolIndex symbolIndex;
+
+    synchronized JavaCompilerService compiler() {
+        var current = settings;
+        if (!current.equals(cacheSettings)) {
+            LOG.info("Recreating compiler because\n\t" + current + "\nis different than\n\t" + cacheSettings);
             cacheCompiler = createCompiler();
-            cacheSettings = settings;
+            cacheSettings = current;
         }
         return cacheCompiler;
     }
 
+    /** Can compiler() return without running createCompiler()? Unlike compiler(), this never waits. */
+    private boolean isCompilerReady() {
+        return settings.equals(cacheSettings);
+    }
+
+    /** configuring is true while a background thread is running compiler(), guarded by configureLock */
+    private boolean configuring = false;
+
+    private final Object configureLock = new Object();
+
+    /**
+     * Create the compiler on a background thread, so the message thread doesn't wait for class path inference. In the
+     * meantime, features that only need Parser, like documentSymbol, foldingRange, codeLens and workspace/symbol, keep
+     * working, and features that need the compiler return nothing.
+     */
+    private void configureInBackground() {
+        synchronized (configureLock) {
+            if (configuring || isCompilerReady()) return;
+            configuring = true;
+        }
+        Runnable configure =
+                () -> {
+                    try {
+                        // If settings change while we're creating the compiler, create it again with the new settings
+                        while (true) {
+                            compiler();
+                            synchronized (configureLock) {
+                                if (isCompilerReady()) {
+                                    configuring = false;
+                                    return;
+                                }
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        LOG.log(Level.SEVERE, "Failed to configure javac", e);
+                        synchronized (configureLock) {
+                            configuring = false;
+                        }
+                    }
+                };
+        var thread = new Thread(configure, "configure-javac");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Is javac still being configured? Requests that need the compiler check this first and return nothing, rather than
+     * waiting for compiler() while it holds its lock for the whole class path inference.
+     */
+    private boolean stillConfiguring(String request) {
+        if (isCompilerReady()) return false;
+        configureInBackground();
+        LOG.info(String.format("Skipped %s because javac is still being configured", request));
+        return true;
+    }
+
+    /** lintedVersions[file] is the version of active document `file` when it was last linted */
+    private final Map<Path, Integer> lintedVersions = new HashMap<>();
+    /** lintedApis[file] is the API fingerprint of active document `file` when it was last linted */
+    private final Map<Path, String> lintedApis = new HashMap<>();
+    /** cacheColors[uri] is the semantic colors of active document `uri` from when it was last linted */
+    private final Map<URI, SemanticColors> cacheColors = new HashMap<>();
+
+    /**
+     * Lint the active documents that have changed since they were last linted. If the API of a changed document has
+     * changed, re-lint the active documents that depend on it too.
+     */
+    void lintChanged() {
+        var active = FileStore.activeDocuments();
+        var changed = new HashSet<Path>();
+        for (var file : active) {
+            if (!Objects.equals(lintedVersions.get(file), FileStore.version(file))) {
+                changed.add(file);
+            }
+        }
+        if (changed.isEmpty()) {
+            LOG.info("No active documents have changed since they were last linted");
+            return;
+        }
+        var todo = new HashSet<Path>(changed);
+        for (var file : changed) {
+            if (Parser.apiFingerprint(file).equals(lintedApis.get(file))) continue;
+            for (var dependent : WordIndex.dependents(file)) {
+                if (active.contains(dependent)) {
+                    todo.add(dependent);
+                }
+            }
+        }
+        lint(todo);
+    }
+
     void lint(Collection<Path> files) {
-        // TODO only lint the current focus, merging errors/decorations with existing
         LOG.info("Lint " + files.size() + " files...");
         var started = Instant.now();
         if (files.isEmpty()) return;
         var sources = new ArrayList<SourceFileObject>();
+        var versions = new HashMap<Path, Integer>();
+        var apis = new HashMap<Path, String>();
         for (var file : files) {
             var source = new SourceFileObject(file);
             sources.add(source);
+            versions.put(file, FileStore.version(file));
+            apis.put(file, Parser.apiFingerprint(file));
         }
         try (var batch = compiler().compileBatch(sources)) {
             var compiled = Instant.now();
@@ -57,15 +156,24 @@ class JavaLanguageServer extends LanguageServer {
             LOG.info(
                     String.format(
                             "...published %d diagnostics in %d files in %d ms", countErrors, errors.size(), elapsed));
-            // Add semantic colors
+            // Add semantic colors, merged with the colors of active documents we didn't re-lint,
+            // because the client replaces all colors each time we send them
+            for (var c : batch.colors()) {
+                cacheColors.put(c.uri, c);
+            }
+            var active = FileStore.activeDocuments();
+            cacheColors.keySet().removeIf(uri -> !active.contains(Paths.get(uri)));
             var colors = new SemanticColorsMessage();
-            colors.files = batch.colors();
+            colors.files = new ArrayList<>(cacheColors.values());
             client.customNotification("java/colors", GSON.toJsonTree(colors));
             var colored = Instant.now();
             elapsed = Duration.between(published, colored).toMillis();
             LOG.info(String.format("...colored in %d ms", elapsed));
-            // Done
-            uncheckedChanges = false;
+            // Remember which versions we linted
+            lintedVersions.putAll(versions);
+            lintedVersions.keySet().retainAll(active);
+            lintedApis.putAll(apis);
+            lintedApis.keySet().retainAll(active);
         }
         var done = Instant.now();
         LOG.info(String.format("...done in %d ms", Duration.between(started, done).toMillis()));
@@ -89,6 +197,14 @@ class JavaLanguageServer extends LanguageServer {
         Objects.requireNonNull(workspaceRoot, "Can't create compiler because workspaceRoot has not been initialized");
 
         javaStartProgress(new JavaStartProgressParams("Configure javac"));
+        try {
+            return configure();
+        } finally {
+            javaEndProgress();
+        }
+    }
+
+    private JavaCompilerService configure() {
         javaReportProgress(new JavaReportProgressParams("Finding source roots"));
 
         var externalDependencies = externalDependencies();
@@ -96,22 +212,98 @@ class JavaLanguageServer extends LanguageServer {
         var addExports = addExports();
         // If classpath is specified by the user, don't infer anything
         if (!classPath.isEmpty()) {
-            javaEndProgress();
-            return new JavaCompilerService(classPath, Collections.emptySet(), addExports);
+            return scanClassPath(classPath, CompletableFuture.completedFuture(Set.of()), addExports);
         }
         // Otherwise, combine inference with user-specified external dependencies
         else {
             var infer = new InferConfig(workspaceRoot, externalDependencies);
+            var cache = new ClassPathCache(ClassPathCache.defaultStorage(workspaceRoot));
+
+            // If the build files haven't changed, start with the paths we resolved last time
+            javaReportProgress(new JavaReportProgressParams("Checking build files"));
+            var fingerprint = ClassPathCache.fingerprint(workspaceRoot, externalDependencies);
+            var cached = cache.find(fingerprint);
+            if (cached.isPresent()) {
+                revalidateClassPath(infer, cache, cached.get(), addExports);
+                var docPath = CompletableFuture.completedFuture(cached.get().docPath);
+                return scanClassPath(cached.get().classPath, docPath, addExports);
+            }
 
+            // Resolve the doc path at the same time as the class path, and don't wait for it to start compiling
             javaReportProgress(new JavaReportProgressParams("Inferring class path"));
-            classPath = infer.classPath();
+            var docPath = inferDocPath(infer);
+            var resolved = infer.classPath();
+            docPath.thenAccept(
+                    d -> {
+                        // If mvn or bazel failed, try again next time rather than starting with what we have now
+                        if (infer.buildToolFailed()) {
+                            LOG.warning("Not saving the class path, because the build tool failed");
+                            return;
+                        }
+                        cache.save(new ClassPathCache.Resolved(fingerprint, resolved, d));
+                    });
+            return scanClassPath(resolved, docPath, addExports);
+        }
+    }
 
-            javaReportProgress(new JavaReportProgressParams("Inferring doc path"));
-            var docPath = infer.buildDocPath();
+    /** Run infer.buildDocPath() on its own thread, because it mostly waits for a build tool */
+    private static CompletableFuture<Set<Path>> inferDocPath(InferConfig infer) {
+        Executor newThread =
+                task -> {
+                    var thread = new Thread(task, "infer-doc-path");
+                    thread.setDaemon(true);
+                    thread.start();
+                };
+        return CompletableFuture.supplyAsync(infer::buildDocPath, newThread);
+    }
 
-            javaEndProgress();
-            return new JavaCompilerService(classPath, docPath, addExports);
-        }
+    private JavaCompilerService scanClassPath(
+            Set<Path> classPath, CompletableFuture<Set<Path>> docPath, Set<String> addExports) {
+        javaReportProgress(new JavaReportProgressParams("Scanning JDK and class path"));
+        return new JavaCompilerService(classPath, docPath, addExports);
+    }
+
+    /** relintAll is set when the compiler has been replaced, so diagnostics computed by the old compiler are stale */
+    private volatile boolean relintAll = false;
+
+    /**
+     * Resolve the class path again on a background thread, in case something outside the build files has changed, for
+     * example a SNAPSHOT dependency. If it is different from `cached`, save it and swap in a new compiler.
+     */
+    private void revalidateClassPath(
+            InferConfig infer, ClassPathCache cache, ClassPathCache.Resolved cached, Set<String> addExports) {
+        var startedWith = settings;
+        Runnable revalidate =
+                () -> {
+                    try {
+                        var docPath = inferDocPath(infer);
+                        var classPath = infer.classPath();
+                        var fresh = new ClassPathCache.Resolved(cached.fingerprint, classPath, docPath.join());
+                        // If mvn or bazel failed, the cached class path is the best we have
+                        if (infer.buildToolFailed()) {
+                            LOG.warning("Keeping the cached class path, because the build tool failed");
+                            return;
+                        }
+                        if (fresh.samePaths(cached)) {
+                            LOG.info("Cached class path is up-to-date");
+                            return;
+                        }
+                        LOG.info("Class path has changed since it was cached, recreating compiler");
+                        cache.save(fresh);
+                        var compiler = new JavaCompilerService(fresh.classPath, fresh.docPath, addExports);
+                        synchronized (this) {
+                            // If settings have changed since we started, compiler() has already replaced our compiler
+                            if (!startedWith.equals(cacheSettings)) return;
+                            cacheCompiler = compiler;
+                        }
+                        relintAll = true;
+                    } catch (RuntimeException e) {
+                        LOG.warning("Failed to revalidate class path: " + e);
+                    }
+                };
+        var thread = new Thread(revalidate, "revalidate-class-path");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     private Set<String> externalDependencies() {
@@ -148,6 +340,7 @@ class JavaLanguageServer extends LanguageServer {
     public InitializeResult initialize(InitializeParams params) {
         this.workspaceRoot = Paths.get(params.rootUri);
         FileStore.setWorkspaceRoots(Set.of(Paths.get(params.rootUri)));
+        this.symbolIndex = new SymbolIndex(SymbolIndex.defaultStorage(workspaceRoot));
 
         var c = new JsonObject();
         c.addProperty("textDocumentSync", 2); // Incremental
@@ -187,6 +380,10 @@ class JavaLanguageServer extends LanguageServer {
         watchers.add(watchJava);
         options.add("watchers", watchers);
         client.registerCapability("workspace/didChangeWatchedFiles", GSON.toJsonTree(options));
+        // Don't configure javac yet: clients send their settings right after initialized, and configuring with the
+        // default settings first would only be thrown away. If settings never arrive, the first request that needs
+        // the compiler starts configuring it.
+        symbolIndex.updateInBackground();
     }
 
     @Override
@@ -198,7 +395,12 @@ class JavaLanguageServer extends LanguageServer {
 
     @Override
     public List<SymbolInformation> workspaceSymbols(WorkspaceSymbolParams params) {
-        return compiler().findSymbols(params.query, 50);
+        return symbolIndex.search(params.query, 50);
+    }
+
+    /** Wait for the workspace symbols to be indexed (exposed for testing) */
+    void awaitSymbolIndex() {
+        symbolIndex.updateInBackground().join();
     }
 
     @Override
@@ -206,6 +408,10 @@ class JavaLanguageServer extends LanguageServer {
         var java = change.settings.getAsJsonObject().get("java");
         LOG.info("Received java settings " + java);
         settings = java.getAsJsonObject();
+        if (settings.has("parseCacheSize")) {
+            Parser.setParseCacheSize(settings.get("parseCacheSize").getAsLong());
+        }
+        configureInBackground();
     }
 
     @Override
@@ -337,13 +543,14 @@ class JavaLanguageServer extends LanguageServer {
         var started = Instant.now();
         var uri = position.textDocument.uri;
         if (!FileStore.isJavaFile(uri)) return Optional.empty();
+        if (stillConfiguring("completion")) return Optional.empty();
         var file = Paths.get(uri);
         var line = position.position.line + 1;
         var column = position.position.character + 1;
         LOG.info(String.format("Complete at %s(%d,%d)...", file, line, column));
         // Figure out what kind of completion we want to do
         var contents = FileStore.contents(file);
-        var cursor = FileStore.offset(contents, line, column);
+        var cursor = FileStore.offset(file, line, column);
         var addParens = !hasParen(contents, cursor);
         var addSemi = restOfLine(contents, cursor).matches("\\s*");
         // Complete object. or object.partial
@@ -352,7 +559,7 @@ class JavaLanguageServer extends LanguageServer {
             LOG.info("...complete members");
             // Erase .partial
             // contents = eraseRegion(contents, dot, cursor);
-            var parse = Parser.parseJavaFileObject(new SourceFileObject(file, contents, Instant.now()));
+            var parse = Parser.parseFile(file);
             contents = parse.prune(dot);
             try (var compile = compiler().compileBatch(List.of(new SourceFileObject(file, contents, Instant.now())))) {
                 var list = compile.completeMembers(file, dot, addParens, addSemi);
@@ -366,7 +573,7 @@ class JavaLanguageServer extends LanguageServer {
             LOG.info("...complete references");
             // Erase ::partial
             // contents = eraseRegion(contents, ref, cursor);
-            var parse = Parser.parseJavaFileObject(new SourceFileObject(file, contents, Instant.now()));
+            var parse = Parser.parseFile(file);
             contents = parse.prune(ref);
             try (var compile = compiler().compileBatch(List.of(new SourceFileObject(file, contents, Instant.now())))) {
                 var list = compile.completeReferences(file, ref);
@@ -379,7 +586,7 @@ class JavaLanguageServer extends LanguageServer {
         if (at != -1) {
             LOG.info("...complete annotations");
             var partialName = contents.substring(at + 1, cursor);
-            var parse = Parser.parseJavaFileObject(new SourceFileObject(file, contents, Instant.now()));
+            var parse = Parser.parseFile(file);
             contents = parse.prune(cursor);
             try (var compile = compiler().compileBatch(List.of(new SourceFileObject(file, contents, Instant.now())))) {
                 var list = compile.completeAnnotations(file, cursor, partialName);
@@ -391,7 +598,7 @@ class JavaLanguageServer extends LanguageServer {
         // Complete case partial
         if (isPartialCase(contents, cursor)) {
             LOG.info("...complete members");
-            var parse = Parser.parseJavaFileObject(new SourceFileObject(file, contents, Instant.now()));
+            var parse = Parser.parseFile(file);
             contents = parse.eraseCase(cursor);
             parse = Parser.parseJavaFileObject(new SourceFileObject(file, contents, Instant.now()));
             contents = parse.prune(cursor);
@@ -404,12 +611,12 @@ class JavaLanguageServer extends LanguageServer {
         // Complete partial
         var looksLikeIdentifier = Character.isJavaIdentifierPart(contents.charAt(cursor - 1));
         if (looksLikeIdentifier) {
-            var parse = Parser.parseJavaFileObject(new SourceFileObject(file, contents, Instant.now()));
+            var parse = Parser.parseFile(file);
             if (parse.isIdentifier(cursor)) {
                 LOG.info("...complete identifiers");
-                contents = parse.prune(cursor);
-                parse = Parser.parseJavaFileObject(new SourceFileObject(file, contents, Instant.now()));
+                // prune() erases code without moving anything, so the path to the cursor is the same in the pruned file
                 var path = parse.findPath(cursor);
+                contents = parse.prune(cursor);
                 try (var compile =
                         compiler().compileBatch(List.of(new SourceFileObject(file, contents, Instant.now())))) {
                     var list =
@@ -452,7 +659,7 @@ class JavaLanguageServer extends LanguageServer {
         var file = compiler().docs().find(ptr);
         if (!file.isPresent()) return Optional.empty();
         // Parse file and find el
-        var parse = Parser.parseJavaFileObject(file.get());
+        var parse = Parser.parseDocFile(file.get());
         var path = parse.fuzzyFind(ptr);
         if (!path.isPresent()) return Optional.empty();
         // Parse the doctree associated with el
@@ -469,7 +676,7 @@ class JavaLanguageServer extends LanguageServer {
         var file = compiler().docs().find(ptr);
         if (!file.isPresent()) return Optional.empty();
         // Parse file and find method
-        var parse = Parser.parseJavaFileObject(file.get());
+        var parse = Parser.parseDocFile(file.get());
         var path = parse.fuzzyFind(ptr);
         if (!path.isPresent()) return Optional.empty();
         // Should be a MethodTree
@@ -491,6 +698,7 @@ class JavaLanguageServer extends LanguageServer {
     @Override
     public CompletionItem resolveCompletionItem(CompletionItem unresolved) {
         if (unresolved.data == null) return unresolved;
+        if (stillConfiguring("completionItem/resolve")) return unresolved;
         var data = GSON.fromJson(unresolved.data, CompletionData.class);
         var markdown = findDocs(data.ptr);
         if (markdown.isPresent()) {
@@ -569,7 +777,7 @@ class JavaLanguageServer extends LanguageServer {
         var ptr = new Ptr(e);
         var file = compiler().docs().find(ptr);
         if (!file.isPresent()) return Optional.empty();
-        var parse = Parser.parseJavaFileObject(file.get());
+        var parse = Parser.parseDocFile(file.get());
         var path = parse.fuzzyFind(ptr);
         if (!path.isPresent()) return Optional.empty();
         var doc = parse.doc(path.get());
@@ -583,6 +791,7 @@ class JavaLanguageServer extends LanguageServer {
         var line = position.position.line + 1;
         var column = position.position.character + 1;
         if (!FileStore.isJavaFile(uri)) return Optional.empty();
+        if (stillConfiguring("hover")) return Optional.empty();
         var file = Paths.get(uri);
         // Log start time
         LOG.info(String.format("Hover over %s(%d,%d) ...", uri.getPath(), line, column));
@@ -621,13 +830,14 @@ class JavaLanguageServer extends LanguageServer {
     public Optional<SignatureHelp> signatureHelp(TextDocumentPositionParams position) {
         var uri = position.textDocument.uri;
         if (!FileStore.isJavaFile(uri)) return Optional.empty();
+        if (stillConfiguring("signatureHelp")) return Optional.empty();
         var file = Paths.get(uri);
         var line = position.position.line + 1;
         var column = position.position.character + 1;
         LOG.info(String.format("Find signature at at %s(%d,%d)...", file, line, column));
         var contents = FileStore.contents(file);
-        var cursor = FileStore.offset(contents, line, column);
-        var parse = Parser.parseJavaFileObject(new SourceFileObject(file, contents, Instant.now()));
+        var cursor = FileStore.offset(file, line, column);
+        var parse = Parser.parseFile(file);
         contents = parse.prune(cursor);
         try (var compile = compiler().compileBatch(List.of(new SourceFileObject(file, contents, Instant.now())))) {
             return compile.signatureHelp(file, cursor);
@@ -638,6 +848,7 @@ class JavaLanguageServer extends LanguageServer {
     public Optional<List<Location>> gotoDefinition(TextDocumentPositionParams position) {
         var fromUri = position.textDocument.uri;
         if (!FileStore.isJavaFile(fromUri)) return Optional.empty();
+        if (stillConfiguring("definition")) return Optional.empty();
         var fromFile = Paths.get(fromUri);
         var fromLine = position.position.line + 1;
         var fromColumn = position.position.character + 1;
@@ -683,6 +894,7 @@ class JavaLanguageServer extends LanguageServer {
     public Optional<List<Location>> findReferences(ReferenceParams position) {
         var toUri = position.textDocument.uri;
         if (!FileStore.isJavaFile(toUri)) return Optional.empty();
+        if (stillConfiguring("references")) return Optional.empty();
         var toFile = Paths.get(toUri);
         var toLine = position.position.line + 1;
         var toColumn = position.position.character + 1;
@@ -741,33 +953,22 @@ class JavaLanguageServer extends LanguageServer {
 
     private List<JavaFileObject> pruneWord(Collection<Path> files, String name) {
         LOG.info(String.format("...prune code that doesn't contain `%s`", name));
+        var search = new MultiStringSearch(List.of(name));
         var sources = new ArrayList<JavaFileObject>();
         for (var f : files) {
-            var pruned = Parser.parseFile(f).prune(name);
+            CancelToken.checkCancelled();
+            var pruned = Parser.parseFile(f).prune(search);
             sources.add(new SourceFileObject(f, pruned, Instant.EPOCH));
         }
         return sources;
     }
 
-    private Parser cacheParse;
-    private Path cacheParseFile = Paths.get("/NONE");
-    private int cacheParseVersion = -1;
-
-    private void updateCachedParse(Path file) {
-        if (file.equals(cacheParseFile) && FileStore.version(file) == cacheParseVersion) return;
-        LOG.info(String.format("Updating cached parse file to %s", file));
-        cacheParse = Parser.parseFile(file);
-        cacheParseFile = file;
-        cacheParseVersion = FileStore.version(file);
-    }
-
     @Override
     public List<SymbolInformation> documentSymbol(DocumentSymbolParams params) {
         var uri = params.textDocument.uri;
         if (!FileStore.isJavaFile(uri)) return List.of();
         var file = Paths.get(uri);
-        updateCachedParse(file);
-        var infos = cacheParse.documentSymbols();
+        var infos = Parser.outline(file).documentSymbols();
         return infos;
     }
 
@@ -776,16 +977,16 @@ class JavaLanguageServer extends LanguageServer {
         var uri = params.textDocument.uri;
         if (!FileStore.isJavaFile(uri)) return List.of();
         var file = Paths.get(uri);
-        updateCachedParse(file);
-        var declarations = cacheParse.codeLensDeclarations();
+        var parse = Parser.outline(file);
+        var declarations = parse.codeLensDeclarations();
         var result = new ArrayList<CodeLens>();
         for (var d : declarations) {
-            var range = cacheParse.range(d);
+            var range = parse.range(d);
             if (!range.isPresent()) continue;
             var className = Parser.className(d);
             var memberName = Parser.memberName(d);
             // If test class or method, add "Run Test" code lens
-            if (cacheParse.isTestClass(d)) {
+            if (parse.isTestClass(d)) {
                 var arguments = new JsonArray();
                 arguments.add(uri.toString());
                 arguments.add(className);
@@ -796,7 +997,7 @@ class JavaLanguageServer extends LanguageServer {
                 // TODO run all tests in file
                 // TODO run all tests in package
             }
-            if (cacheParse.isTestMethod(d)) {
+            if (parse.isTestMethod(d)) {
                 var arguments = new JsonArray();
                 arguments.add(uri.toString());
                 arguments.add(className);
@@ -817,7 +1018,7 @@ class JavaLanguageServer extends LanguageServer {
                 lens = new CodeLens(range.get(), command, null);
                 result.add(lens);
             }
-            if (cacheParse.showReferencesCodeLens(d)) {
+            if (parse.showReferencesCodeLens(d)) {
                 // Unresolved "_ references" code lens
                 var t = d.getLeaf();
                 var start = range.get().start;
@@ -850,15 +1051,20 @@ class JavaLanguageServer extends LanguageServer {
     @Override
     public CodeLens resolveCodeLens(CodeLens unresolved) {
         var data = GSON.fromJson(unresolved.data, CodeLensData.class);
-        LOG.info(String.format("Count references to `%s`...", data.name));
-        var self = countSelfReferences(data);
-        var cross = countCrossReferences(data);
-        var count = self + cross;
         String title;
-        if (count == -1) title = "? references";
-        else if (count == 1) title = "1 reference";
-        else if (cross == TOO_EXPENSIVE) title = "Find references";
-        else title = String.format("%d references", count);
+        if (stillConfiguring("codeLens/resolve")) {
+            // Until the compiler is ready, offer to find references instead of counting them
+            title = "Find references";
+        } else {
+            LOG.info(String.format("Count references to `%s`...", data.name));
+            var self = countSelfReferences(data);
+            var cross = countCrossReferences(data);
+            var count = self + cross;
+            if (count == -1) title = "? references";
+            else if (count == 1) title = "1 reference";
+            else if (cross == TOO_EXPENSIVE) title = "Find references";
+            else title = String.format("%d references", count);
+        }
         var command = "java.command.findReferences";
         var arguments = new JsonArray();
         arguments.add(data.uri.toString());
@@ -869,39 +1075,59 @@ class JavaLanguageServer extends LanguageServer {
         return unresolved;
     }
 
-    private Map<String, Integer> cacheSelfReferences = new HashMap<>();
-    private Path cacheSelfReferencesFile = Paths.get("/NONE");
-    private int cacheSelfReferencesVersion = -1;
+    /** The number of references to each declaration in one version of one file, from inside that file */
+    private static class SelfReferences {
+        final Path file;
+        final int version;
+        final Map<String, Integer> counts;
+
+        SelfReferences(Path file, int version, Map<String, Integer> counts) {
+            this.file = file;
+            this.version = version;
+            this.counts = counts;
+        }
+    }
+
+    /**
+     * The self-references of the file that was counted most recently. It's replaced rather than modified, so concurrent
+     * codeLens/resolve requests don't need a lock, and counting never holds the monitor that compiler() waits on.
+     */
+    private volatile SelfReferences cacheSelfReferences = new SelfReferences(Paths.get("/NONE"), -1, Map.of());
 
     private int countSelfReferences(CodeLensData data) {
         var file = Paths.get(data.uri);
-        if (!cacheSelfReferencesFile.equals(file) || cacheSelfReferencesVersion < FileStore.version(file)) {
-            updateCacheSelfReferences(file);
+        var cached = cacheSelfReferences;
+        if (!cached.file.equals(file) || cached.version < FileStore.version(file)) {
+            cached = countAllSelfReferences(file);
+            cacheSelfReferences = cached;
         }
-        return cacheSelfReferences.get(data.signature);
+        return cached.counts.get(data.signature);
     }
 
-    private void updateCacheSelfReferences(Path file) {
+    private SelfReferences countAllSelfReferences(Path file) {
         LOG.info(String.format("...count all self-references in %s...", file));
-        cacheSelfReferences.clear();
-        updateCachedParse(file);
+        var version = FileStore.version(file);
+        var counts = new HashMap<String, Integer>();
+        var parse = Parser.outline(file);
         var sources = Set.of(new SourceFileObject(file));
         try (var batch = compiler().compileBatch(sources)) {
-            for (var d : cacheParse.codeLensDeclarations()) {
-                if (!cacheParse.showReferencesCodeLens(d)) continue;
-                var range = cacheParse.range(d);
+            for (var d : parse.codeLensDeclarations()) {
+                if (!parse.showReferencesCodeLens(d)) continue;
+                var range = parse.range(d);
                 if (range.isEmpty()) continue;
                 var start = range.get().start;
                 var fromPaths = batch.references(file, start.line + 1, start.character + 1).orElse(List.of());
                 var signature = Parser.signature(d);
-                cacheSelfReferences.put(signature, fromPaths.size());
+                counts.put(signature, fromPaths.size());
             }
         }
-        cacheSelfReferencesFile = file;
-        cacheSelfReferencesVersion = FileStore.version(file);
+        return new SelfReferences(file, version, counts);
     }
 
-    /** Cache reference counts on Parser.signature(_) */
+    /**
+     * Cache reference counts on Parser.signature(_) and the API fingerprint of the declaring file, so editing the body
+     * of the declaring file doesn't invalidate the counts, but changing its API does
+     */
     private Cache<String, Integer> cacheCountCrossReferences = new Cache<>();
 
     private static final int TOO_EXPENSIVE = 100;
@@ -917,9 +1143,14 @@ class JavaLanguageServer extends LanguageServer {
             return TOO_EXPENSIVE;
         }
         // Figure out what files need to be updated
+        var key = data.signature + "@" + Parser.apiFingerprint(toFile);
         var todo = new HashSet<Path>();
+        var countByFile = new HashMap<Path, Integer>();
         for (var fromFile : fromFiles) {
-            if (cacheCountCrossReferences.needs(fromFile, data.signature)) {
+            var cached = cacheCountCrossReferences.find(fromFile, key);
+            if (cached.isPresent()) {
+                countByFile.put(fromFile, cached.get());
+            } else {
                 todo.add(fromFile);
             }
         }
@@ -928,27 +1159,29 @@ class JavaLanguageServer extends LanguageServer {
             todo.add(toFile);
             LOG.info(String.format("...compile %d files", todo.size()));
             var eraseCode = pruneWord(todo, data.name);
-            var countByFile = new HashMap<Path, Integer>();
+            var found = new HashMap<Path, Integer>();
             try (var batch = compiler().compileBatch(eraseCode)) {
                 var fromPaths = batch.references(toFile, data.line + 1, data.character + 1).orElse(List.of());
                 for (var fromPath : fromPaths) {
                     var fromFile = Paths.get(fromPath.getCompilationUnit().getSourceFile().toUri());
-                    var newCount = countByFile.getOrDefault(fromFile, 0) + 1;
-                    countByFile.put(fromFile, newCount);
+                    var newCount = found.getOrDefault(fromFile, 0) + 1;
+                    found.put(fromFile, newCount);
                 }
             }
             for (var fromFile : todo) {
-                var count = countByFile.getOrDefault(fromFile, 0);
+                var count = found.getOrDefault(fromFile, 0);
                 // TODO consider not caching if fromUri contains errors
-                cacheCountCrossReferences.load(fromFile, data.signature, count);
+                cacheCountCrossReferences.load(fromFile, key, count);
+                countByFile.put(fromFile, count);
             }
-            LOG.info(String.format("...found references in %d files", countByFile.size()));
+            LOG.info(String.format("...found references in %d files", found.size()));
         }
+        LOG.info(String.format("...reference count cache has %s", cacheCountCrossReferences.metrics()));
         // Sum up the count
         var count = 0;
         for (var fromFile : fromFiles) {
             if (fromFile.equals(toFile)) continue;
-            count += cacheCountCrossReferences.get(fromFile, data.signature);
+            count += countByFile.get(fromFile);
         }
         return count;
     }
@@ -966,6 +1199,7 @@ class JavaLanguageServer extends LanguageServer {
 
     @Override
     public List<TextEdit> formatting(DocumentFormattingParams params) {
+        if (stillConfiguring("formatting")) return List.of();
         var file = Paths.get(params.textDocument.uri);
         var sources = Set.of(new SourceFileObject(file));
         try (var compile = compiler().compileBatch(sources)) {
@@ -1050,8 +1284,7 @@ class JavaLanguageServer extends LanguageServer {
     public List<FoldingRange> foldingRange(FoldingRangeParams params) {
         if (!FileStore.isJavaFile(params.textDocument.uri)) return List.of();
         var file = Paths.get(params.textDocument.uri);
-        updateCachedParse(file);
-        return cacheParse.foldingRanges();
+        return Parser.outline(file).foldingRanges();
     }
 
     @Override
@@ -1070,7 +1303,7 @@ class JavaLanguageServer extends LanguageServer {
         if (!FileStore.isJavaFile(params.textDocument.uri)) return;
         // So that subsequent documentSymbol and codeLens requests will be faster
         var file = Paths.get(params.textDocument.uri);
-        updateCachedParse(file);
+        Parser.outline(file);
         uncheckedChanges = true;
     }
 
@@ -1085,6 +1318,10 @@ class JavaLanguageServer extends LanguageServer {
         FileStore.close(params);
 
         if (FileStore.isJavaFile(params.textDocument.uri)) {
+            var closed = Paths.get(params.textDocument.uri);
+            lintedVersions.remove(closed);
+            lintedApis.remove(closed);
+            cacheColors.remove(closed.toUri());
             // Clear diagnostics
             client.publishDiagnostics(new PublishDiagnosticsParams(params.textDocument.uri, List.of()));
         }
@@ -1092,22 +1329,43 @@ class JavaLanguageServer extends LanguageServer {
 
     @Override
     public void didSaveTextDocument(DidSaveTextDocumentParams params) {
-        if (FileStore.isJavaFile(params.textDocument.uri)) {
-            // Re-lint all active documents
-            lint(FileStore.activeDocuments());
+        if (!FileStore.isJavaFile(params.textDocument.uri)) return;
+        // If javac is still being configured, lint once it's ready
+        if (!isCompilerReady()) {
+            uncheckedChanges = true;
+            return;
         }
+        // Re-lint active documents that have changed
+        lintChanged();
     }
 
-    private boolean uncheckedChanges = false;
+    private volatile boolean uncheckedChanges = false;
 
     @Override
     public void doAsyncWork() {
+        if (relintAll) {
+            // The compiler has been replaced, so re-lint every active document with the new one
+            relintAll = false;
+            lintedVersions.clear();
+            uncheckedChanges = true;
+        }
         if (uncheckedChanges) {
-            // Re-lint all active documents
-            lint(FileStore.activeDocuments());
+            // Don't wait for the compiler on the message thread; hasAsyncWork() brings us back when it's ready
+            if (!isCompilerReady()) {
+                configureInBackground();
+            } else {
+                // Re-lint active documents that have changed
+                lintChanged();
+                uncheckedChanges = false;
+            }
         }
     }
 
+    @Override
+    public boolean hasAsyncWork() {
+        return relintAll || (uncheckedChanges && isCompilerReady());
+    }
+
     private static final Logger LOG = Logger.getLogger("main");
 }
 
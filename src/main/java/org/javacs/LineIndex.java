@@ -0,0 +1,59 @@
+package org.javacs;
+
+import java.util.Arrays;
+import org.javacs.lsp.Position;
+
+/**
+ * LineIndex records the offset where each line of a document starts, so converting between offsets and LSP positions
+ * is a binary search instead of a scan from the start of the document. FileStore keeps one for each version of each
+ * file.
+ */
+class LineIndex {
+    /** starts[line] is the offset of the first character of line (0-based) */
+    private final int[] starts;
+
+    private final int length;
+
+    private LineIndex(int[] starts, int length) {
+        this.starts = starts;
+        this.length = length;
+    }
+
+    static LineIndex of(CharSequence contents) {
+        var starts = new int[64];
+        var count = 1;
+        for (var i = 0; i < contents.length(); i++) {
+            if (contents.charAt(i) != '\n') continue;
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            starts[count++] = i + 1;
+        }
+        return new LineIndex(Arrays.copyOf(starts, count), contents.length());
+    }
+
+    int lines() {
+        return starts.length;
+    }
+
+    /** Convert a 0-based line and character to an offset, clamping positions past the end of the file */
+    int offset(int line, int character) {
+        if (line < 0) return 0;
+        if (line >= starts.length) return length;
+        return Math.min(starts[line] + character, length);
+    }
+
+    /** The line (0-based) that contains `offset` */
+    int line(long offset) {
+        var found = Arrays.binarySearch(starts, (int) Math.min(offset, length));
+        // If offset isn't the start of a line, binarySearch returns -(the next line start) - 1
+        return found >= 0 ? found : -found - 2;
+    }
+
+    /** Convert an offset to a 0-based LSP position */
+    Position position(long offset) {
+        offset = Math.max(0, Math.min(offset, length));
+        var line = line(offset);
+        return new Position(line, (int) offset - starts[line]);
+    }
+}
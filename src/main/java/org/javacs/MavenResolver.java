@@ -0,0 +1,489 @@
+package org.javacs;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * MavenResolver computes the dependencies of a pom.xml from the poms and jars in a local repository like ~/.m2, without
+ * starting maven. It follows parent poms, properties, dependencyManagement and imported BOMs, and picks versions of
+ * transitive dependencies with maven's nearest-wins rule. It never downloads anything: if a pom or jar it needs isn't
+ * in the local repository, or the build uses a feature we don't model, like modules or profiles, it gives up, and the
+ * caller should fall back to running maven.
+ */
+class MavenResolver {
+    /** Thrown when something we need isn't in the local repository, or uses a feature we don't understand */
+    private static class Missing extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Missing(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private static class Dependency {
+        final String groupId, artifactId, version, type, classifier, scope, systemPath;
+        final boolean optional;
+        /** exclusions are groupId:artifactId pairs, either of which may be * */
+        final List<String> exclusions;
+
+        Dependency(
+                String groupId,
+                String artifactId,
+                String version,
+                String type,
+                String classifier,
+                String scope,
+                String systemPath,
+                boolean optional,
+                List<String> exclusions) {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.type = type;
+            this.classifier = classifier;
+            this.scope = scope;
+            this.systemPath = systemPath;
+            this.optional = optional;
+            this.exclusions = exclusions;
+        }
+
+        /** Dependencies with the same key are the same artifact, possibly at different versions */
+        String key() {
+            return groupId + ":" + artifactId + ":" + type + ":" + classifier;
+        }
+
+        String managementKey() {
+            return groupId + ":" + artifactId;
+        }
+
+        Dependency withVersion(String version, String scope) {
+            return new Dependency(
+                    groupId, artifactId, version, type, classifier, scope, systemPath, optional, exclusions);
+        }
+
+        /** Replace ${name} in every field, once the properties of the pom that declares this are known */
+        Dependency interpolate(Map<String, String> properties) {
+            var exclusions = new ArrayList<String>();
+            for (var e : this.exclusions) {
+                exclusions.add(MavenResolver.interpolate(e, properties));
+            }
+            return new Dependency(
+                    MavenResolver.interpolate(groupId, properties),
+                    MavenResolver.interpolate(artifactId, properties),
+                    MavenResolver.interpolate(version, properties),
+                    MavenResolver.interpolate(type, properties),
+                    MavenResolver.interpolate(classifier, properties),
+                    MavenResolver.interpolate(scope, properties),
+                    MavenResolver.interpolate(systemPath, properties),
+                    optional,
+                    exclusions);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s:%s:%s", groupId, artifactId, version);
+        }
+    }
+
+    /** A pom with its parents, properties and imported BOMs merged in */
+    private static class Pom {
+        final String groupId, artifactId, version;
+        /** managed[groupId:artifactId] is the version and scope from dependencyManagement */
+        final Map<String, Dependency> managed;
+
+        final List<Dependency> dependencies;
+        /** Does this pom aggregate other modules, whose dependencies we would also need? */
+        final boolean hasModules;
+
+        Pom(
+                String groupId,
+                String artifactId,
+                String version,
+                Map<String, Dependency> managed,
+                List<Dependency> dependencies,
+                boolean hasModules) {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.managed = managed;
+            this.dependencies = dependencies;
+            this.hasModules = hasModules;
+        }
+    }
+
+    /** Root of the local repository, usually ~/.m2/repository */
+    private final Path repository;
+    /** cacheRepositoryPoms[groupId:artifactId:version] is the effective pom of that artifact */
+    private final Map<String, Pom> cacheRepositoryPoms = new HashMap<>();
+    /** The repository poms we are in the middle of loading, so we can tell if a BOM imports itself */
+    private final Set<String> loading = new HashSet<>();
+
+    MavenResolver(Path repository) {
+        this.repository = repository;
+    }
+
+    /** The jars `pomXml` depends on in every scope, including test, if they're all in the local repository */
+    Optional<Set<Path>> classPath(Path pomXml) {
+        var result = new HashSet<Path>();
+        try {
+            for (var d : resolve(pomXml)) {
+                var jar = jar(d, d.classifier);
+                if (jar.isEmpty()) continue;
+                if (!Files.exists(jar.get())) throw new Missing(jar.get() + " does not exist");
+                result.add(jar.get());
+            }
+        } catch (Missing e) {
+            LOG.info("...can't resolve " + pomXml + " from the local repository: " + e.getMessage());
+            return Optional.empty();
+        }
+        LOG.info(String.format("...resolved %d jars from %s", result.size(), repository));
+        return Optional.of(result);
+    }
+
+    /** The source jars of the dependencies of `pomXml`, if they have all been downloaded to the local repository */
+    Optional<Set<Path>> docPath(Path pomXml) {
+        var result = new HashSet<Path>();
+        try {
+            for (var d : resolve(pomXml)) {
+                if (d.scope.equals("system")) continue;
+                var jar = jar(d, "sources");
+                if (jar.isEmpty()) continue;
+                if (!Files.exists(jar.get())) throw new Missing(jar.get() + " does not exist");
+                result.add(jar.get());
+            }
+        } catch (Missing e) {
+            LOG.info("...can't resolve sources of " + pomXml + " from the local repository: " + e.getMessage());
+            return Optional.empty();
+        }
+        return Optional.of(result);
+    }
+
+    /**
+     * All the dependencies of `pomXml`, direct and transitive. We visit the dependency tree breadth-first, so the
+     * first version of an artifact we see is the one nearest the root, which is the one maven picks.
+     */
+    private List<Dependency> resolve(Path pomXml) {
+        var root = load(pomXml, true);
+        if (root.hasModules) throw new Missing(pomXml + " has modules");
+        var chosen = new LinkedHashMap<String, Dependency>();
+        var queue = new ArrayDeque<Map.Entry<Dependency, List<String>>>();
+        for (var d : root.dependencies) {
+            queue.add(Map.entry(d, d.exclusions));
+        }
+        while (!queue.isEmpty()) {
+            var next = queue.poll();
+            var d = next.getKey();
+            var exclusions = next.getValue();
+            if (chosen.containsKey(d.key())) continue;
+            chosen.put(d.key(), d);
+            if (d.scope.equals("system")) continue;
+            // Add the dependencies of d that are visible to its dependents
+            var pom = repositoryPom(d.groupId, d.artifactId, d.version);
+            for (var child : pom.dependencies) {
+                if (child.optional) continue;
+                if (child.scope.equals("test") || child.scope.equals("provided") || child.scope.equals("system")) {
+                    continue;
+                }
+                if (isExcluded(child, exclusions)) continue;
+                // The root pom's dependencyManagement overrides the versions of transitive dependencies
+                var managed = root.managed.get(child.managementKey());
+                if (managed != null) child = child.withVersion(managed.version, child.scope);
+                var childExclusions = new ArrayList<String>(exclusions);
+                childExclusions.addAll(child.exclusions);
+                queue.add(Map.entry(child, childExclusions));
+            }
+        }
+        return new ArrayList<>(chosen.values());
+    }
+
+    private static boolean isExcluded(Dependency d, List<String> exclusions) {
+        for (var e : exclusions) {
+            var parts = e.split(":");
+            var group = parts[0].equals("*") || parts[0].equals(d.groupId);
+            var artifact = parts[1].equals("*") || parts[1].equals(d.artifactId);
+            if (group && artifact) return true;
+        }
+        return false;
+    }
+
+    /** The file for `d` with `classifier`, or empty if `d` is just a pom */
+    private Optional<Path> jar(Dependency d, String classifier) {
+        if (d.scope.equals("system")) {
+            if (d.systemPath.isEmpty() || !classifier.equals(d.classifier)) return Optional.empty();
+            return Optional.of(Paths.get(d.systemPath));
+        }
+        switch (d.type) {
+            case "pom":
+                return Optional.empty();
+            case "jar":
+            case "bundle":
+            case "maven-plugin":
+            case "ejb":
+                break;
+            case "test-jar":
+                if (classifier.isEmpty()) classifier = "tests";
+                break;
+            default:
+                throw new Missing(d + " has type " + d.type);
+        }
+        var name = d.artifactId + "-" + d.version + (classifier.isEmpty() ? "" : "-" + classifier) + ".jar";
+        return Optional.of(directory(d.groupId, d.artifactId, d.version).resolve(name));
+    }
+
+    private Path directory(String groupId, String artifactId, String version) {
+        return repository.resolve(groupId.replace('.', File.separatorChar)).resolve(artifactId).resolve(version);
+    }
+
+    private Path repositoryPomFile(String groupId, String artifactId, String version) {
+        var key = groupId + ":" + artifactId + ":" + version;
+        if (version.startsWith("[") || version.startsWith("(")) {
+            throw new Missing(key + " uses a version range");
+        }
+        if (version.contains("${")) throw new Missing(key + " has a version we can't resolve");
+        var file = directory(groupId, artifactId, version).resolve(artifactId + "-" + version + ".pom");
+        if (!Files.exists(file)) throw new Missing(file + " does not exist");
+        return file;
+    }
+
+    private Pom repositoryPom(String groupId, String artifactId, String version) {
+        var key = groupId + ":" + artifactId + ":" + version;
+        var cached = cacheRepositoryPoms.get(key);
+        if (cached != null) return cached;
+        if (!loading.add(key)) throw new Missing(key + " imports itself");
+        try {
+            var pom = load(repositoryPomFile(groupId, artifactId, version), false);
+            cacheRepositoryPoms.put(key, pom);
+            return pom;
+        } finally {
+            loading.remove(key);
+        }
+    }
+
+    /**
+     * Read `file` and merge in its parents and imported BOMs. Like maven, we merge the parents before we replace any
+     * ${property}, so a property of `file` overrides the same property of its parents everywhere it's used, including
+     * in the dependencyManagement of the parents.
+     */
+    private Pom load(Path file, boolean onFileSystem) {
+        // Find the parents of file, first next to it and then in the repository
+        var chain = new ArrayList<Element>();
+        var visited = new HashSet<Path>();
+        var next = file;
+        while (next != null) {
+            if (!visited.add(next.toAbsolutePath().normalize())) throw new Missing(next + " is its own parent");
+            var project = parse(next);
+            checkProfiles(project, next);
+            chain.add(project);
+            var parent = child(project, "parent");
+            if (parent == null) break;
+            var groupId = text(parent, "groupId", "");
+            var artifactId = text(parent, "artifactId", "");
+            var version = text(parent, "version", "");
+            var relativePath = text(parent, "relativePath", "../pom.xml");
+            var local = onFileSystem && !relativePath.isEmpty() ? next.resolveSibling(relativePath) : null;
+            if (local != null && Files.isDirectory(local)) local = local.resolve("pom.xml");
+            if (local != null && Files.exists(local) && hasCoordinates(parse(local), groupId, artifactId, version)) {
+                next = local;
+            } else {
+                next = repositoryPomFile(groupId, artifactId, version);
+                onFileSystem = false;
+            }
+        }
+
+        // Merge the parents into the child, the furthest ancestor first, without replacing ${property} yet
+        var project = chain.get(0);
+        var properties = new HashMap<String, String>();
+        var managed = new LinkedHashMap<String, Dependency>();
+        var dependencies = new LinkedHashMap<String, Dependency>();
+        for (var i = chain.size() - 1; i >= 0; i--) {
+            var ancestor = chain.get(i);
+            var propertiesElement = child(ancestor, "properties");
+            if (propertiesElement != null) {
+                for (var p : children(propertiesElement)) {
+                    properties.put(p.getTagName(), p.getTextContent().trim());
+                }
+            }
+            var management = child(ancestor, "dependencyManagement");
+            if (management != null) {
+                for (var d : dependencies(management)) {
+                    managed.put(d.key(), d);
+                }
+            }
+            for (var d : dependencies(ancestor)) {
+                dependencies.put(d.key(), d);
+            }
+        }
+        var groupId = coordinate(project, "groupId");
+        var artifactId = text(project, "artifactId", "");
+        var version = coordinate(project, "version");
+        for (var prefix : List.of("project.", "pom.", "")) {
+            properties.put(prefix + "groupId", groupId);
+            properties.put(prefix + "artifactId", artifactId);
+            properties.put(prefix + "version", version);
+        }
+        var parentElement = child(project, "parent");
+        if (parentElement != null) {
+            properties.put("project.parent.groupId", text(parentElement, "groupId", ""));
+            properties.put("project.parent.artifactId", text(parentElement, "artifactId", ""));
+            properties.put("project.parent.version", text(parentElement, "version", ""));
+        }
+        groupId = interpolate(groupId, properties);
+        version = interpolate(version, properties);
+
+        // Replace ${property} with the merged properties, then import BOMs
+        var effectiveManaged = new HashMap<String, Dependency>();
+        var imports = new ArrayList<Dependency>();
+        for (var raw : managed.values()) {
+            var d = raw.interpolate(properties);
+            if (d.scope.equals("import") && d.type.equals("pom")) {
+                imports.add(d);
+            } else {
+                effectiveManaged.put(d.managementKey(), d);
+            }
+        }
+        for (var d : imports) {
+            var bom = repositoryPom(d.groupId, d.artifactId, d.version);
+            for (var key : bom.managed.keySet()) {
+                effectiveManaged.putIfAbsent(key, bom.managed.get(key));
+            }
+        }
+
+        // dependencyManagement fills in the versions and scopes of dependencies
+        var effectiveDependencies = new ArrayList<Dependency>();
+        for (var raw : dependencies.values()) {
+            var d = raw.interpolate(properties);
+            var m = effectiveManaged.get(d.managementKey());
+            var depVersion = !d.version.isEmpty() ? d.version : m != null ? m.version : "";
+            var depScope = !d.scope.isEmpty() ? d.scope : m != null && !m.scope.isEmpty() ? m.scope : "compile";
+            if (depVersion.isEmpty() && !depScope.equals("system")) {
+                throw new Missing(d + " in " + file + " has no version");
+            }
+            effectiveDependencies.add(d.withVersion(depVersion, depScope));
+        }
+        var hasModules = child(project, "modules") != null && !children(child(project, "modules")).isEmpty();
+        return new Pom(groupId, artifactId, version, effectiveManaged, effectiveDependencies, hasModules);
+    }
+
+    /** groupId and version are inherited from the parent if the project doesn't declare them */
+    private static String coordinate(Element project, String tagName) {
+        var parent = child(project, "parent");
+        return text(project, tagName, parent == null ? "" : text(parent, tagName, ""));
+    }
+
+    private static boolean hasCoordinates(Element project, String groupId, String artifactId, String version) {
+        return coordinate(project, "groupId").equals(groupId)
+                && text(project, "artifactId", "").equals(artifactId)
+                && coordinate(project, "version").equals(version);
+    }
+
+    /**
+     * Profiles can be activated by the JDK, the OS, files or -P flags, so if one of them could change the
+     * dependencies, we can't know the dependencies without asking maven. Profiles that only configure the build are
+     * fine.
+     */
+    private static void checkProfiles(Element project, Path file) {
+        var profiles = child(project, "profiles");
+        if (profiles == null) return;
+        for (var profile : children(profiles)) {
+            for (var tagName : List.of("dependencies", "dependencyManagement", "properties", "modules")) {
+                if (child(profile, tagName) != null) {
+                    throw new Missing(file + " has a profile that changes " + tagName);
+                }
+            }
+        }
+    }
+
+    /** The dependencies in the <dependencies> section of `parent`, before any ${property} is replaced */
+    private static List<Dependency> dependencies(Element parent) {
+        var result = new ArrayList<Dependency>();
+        var section = child(parent, "dependencies");
+        if (section == null) return result;
+        for (var d : children(section)) {
+            if (!d.getTagName().equals("dependency")) continue;
+            var exclusions = new ArrayList<String>();
+            var exclusionsElement = child(d, "exclusions");
+            if (exclusionsElement != null) {
+                for (var e : children(exclusionsElement)) {
+                    exclusions.add(text(e, "groupId", "*") + ":" + text(e, "artifactId", "*"));
+                }
+            }
+            var dependency =
+                    new Dependency(
+                            text(d, "groupId", ""),
+                            text(d, "artifactId", ""),
+                            text(d, "version", ""),
+                            text(d, "type", "jar"),
+                            text(d, "classifier", ""),
+                            text(d, "scope", ""),
+                            text(d, "systemPath", ""),
+                            text(d, "optional", "false").equals("true"),
+                            exclusions);
+            result.add(dependency);
+        }
+        return result;
+    }
+
+    private static final Pattern PROPERTY = Pattern.compile("\\$\\{([^}]+)\\}");
+
+    /** Replace ${name} with properties[name], following properties that refer to other properties */
+    private static String interpolate(String value, Map<String, String> properties) {
+        for (var depth = 0; depth < 10; depth++) {
+            var matcher = PROPERTY.matcher(value);
+            if (!matcher.find()) return value;
+            var result = new StringBuilder();
+            do {
+                var name = matcher.group(1);
+                var replacement = properties.get(name);
+                if (replacement == null && name.startsWith("env.")) replacement = System.getenv(name.substring(4));
+                if (replacement == null) replacement = System.getProperty(name);
+                if (replacement == null) throw new Missing("${" + name + "} is not defined");
+                matcher.appendReplacement(result, replacement.replace("\\", "\\\\").replace("$", "\\$"));
+            } while (matcher.find());
+            matcher.appendTail(result);
+            value = result.toString();
+        }
+        throw new Missing(value + " refers to itself");
+    }
+
+    private static Element parse(Path file) {
+        try {
+            var factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(false);
+            var document = factory.newDocumentBuilder().parse(file.toFile());
+            return document.getDocumentElement();
+        } catch (Exception e) {
+            throw new Missing("failed to parse " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static List<Element> children(Element parent) {
+        var result = new ArrayList<Element>();
+        for (var n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) result.add((Element) n);
+        }
+        return result;
+    }
+
+    private static Element child(Element parent, String tagName) {
+        for (var e : children(parent)) {
+            if (e.getTagName().equals(tagName)) return e;
+        }
+        return null;
+    }
+
+    private static String text(Element parent, String tagName, String orElse) {
+        var e = child(parent, tagName);
+        if (e == null) return orElse;
+        return e.getTextContent().trim();
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,152 @@
+package org.javacs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * MultiStringSearch finds every occurrence of several patterns in a text in a single pass, using the Aho-Corasick
+ * algorithm: https://en.wikipedia.org/wiki/Aho%E2%80%93Corasick_algorithm
+ *
+ * <p>The patterns are compiled into a byte-level automaton over their UTF-8 encoding, with the failure links folded
+ * into a dense transition table, so searching costs one table lookup per byte of text no matter how many patterns
+ * there are. A compiled search is immutable, so it can be reused for any number of texts, and from multiple threads.
+ * Empty patterns never match.
+ */
+class MultiStringSearch {
+    /** The length of each pattern in chars, which is how offsets into a CharSequence are measured */
+    private final int[] lengths;
+
+    /** next[state * 256 + b] is the state we move to from state when we read byte b */
+    private final int[] next;
+
+    /** ends[state] is the pattern that ends at state, or -1 */
+    private final int[] ends;
+
+    /** endsLink[state] is the nearest state on the failure chain of state where a pattern ends, or -1 */
+    private final int[] endsLink;
+
+    MultiStringSearch(Collection<String> patterns) {
+        var bytes = new byte[patterns.size()][];
+        this.lengths = new int[patterns.size()];
+        var i = 0;
+        for (var p : patterns) {
+            bytes[i] = p.getBytes(StandardCharsets.UTF_8);
+            lengths[i] = p.length();
+            i++;
+        }
+
+        // Build the trie of patterns, where state 0 is the root
+        var countStates = 1;
+        for (var p : bytes) countStates += p.length;
+        var trie = new int[countStates * 256];
+        Arrays.fill(trie, -1);
+        var ends = new int[countStates];
+        Arrays.fill(ends, -1);
+        var states = 1;
+        for (i = 0; i < bytes.length; i++) {
+            if (bytes[i].length == 0) continue;
+            var state = 0;
+            for (var b : bytes[i]) {
+                var edge = state * 256 + (b & 0xff);
+                if (trie[edge] == -1) trie[edge] = states++;
+                state = trie[edge];
+            }
+            // If the same pattern appears twice, report it under its first index
+            if (ends[state] == -1) ends[state] = i;
+        }
+
+        // Visit the trie breadth-first, so the failure link of each state is computed before its children
+        var next = Arrays.copyOf(trie, states * 256);
+        var fail = new int[states];
+        var endsLink = new int[states];
+        Arrays.fill(endsLink, -1);
+        var queue = new int[states];
+        int head = 0, tail = 0;
+        for (var b = 0; b < 256; b++) {
+            var child = next[b];
+            if (child == -1) {
+                next[b] = 0;
+            } else {
+                fail[child] = 0;
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            var state = queue[head++];
+            var f = fail[state];
+            endsLink[state] = ends[f] != -1 ? f : endsLink[f];
+            for (var b = 0; b < 256; b++) {
+                var edge = state * 256 + b;
+                var child = next[edge];
+                if (child == -1) {
+                    next[edge] = next[f * 256 + b];
+                } else {
+                    fail[child] = next[f * 256 + b];
+                    queue[tail++] = child;
+                }
+            }
+        }
+        this.next = next;
+        this.ends = Arrays.copyOf(ends, states);
+        this.endsLink = endsLink;
+    }
+
+    /**
+     * The offsets in `text` where an occurrence of any of the patterns starts, in ascending order. If `wholeWords` is
+     * set, an occurrence only counts if it isn't preceded or followed by an identifier character.
+     */
+    long[] offsets(CharSequence text, boolean wholeWords) {
+        var found = new long[16];
+        var count = 0;
+        var state = 0;
+        var length = text.length();
+        var i = 0;
+        while (i < length) {
+            // Feed the UTF-8 encoding of the next code point through the automaton
+            var c = text.charAt(i);
+            int codePoint = c, width = 1;
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, text.charAt(i + 1));
+                width = 2;
+            }
+            if (codePoint < 0x80) {
+                state = next[state * 256 + codePoint];
+            } else if (codePoint < 0x800) {
+                state = next[state * 256 + (0xc0 | codePoint >> 6)];
+                state = next[state * 256 + (0x80 | codePoint & 0x3f)];
+            } else if (codePoint < 0x10000) {
+                state = next[state * 256 + (0xe0 | codePoint >> 12)];
+                state = next[state * 256 + (0x80 | codePoint >> 6 & 0x3f)];
+                state = next[state * 256 + (0x80 | codePoint & 0x3f)];
+            } else {
+                state = next[state * 256 + (0xf0 | codePoint >> 18)];
+                state = next[state * 256 + (0x80 | codePoint >> 12 & 0x3f)];
+                state = next[state * 256 + (0x80 | codePoint >> 6 & 0x3f)];
+                state = next[state * 256 + (0x80 | codePoint & 0x3f)];
+            }
+            i += width;
+            // UTF-8 is self-synchronizing, so every pattern that ends here starts on a code point too
+            var s = ends[state] != -1 ? state : endsLink[state];
+            for (; s != -1; s = endsLink[s]) {
+                var start = i - lengths[ends[s]];
+                if (wholeWords && !isWord(text, start, i)) continue;
+                if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                found[count++] = start;
+            }
+        }
+        // Occurrences are found in order of where they end, so a longer pattern can start before a shorter one
+        var result = Arrays.copyOf(found, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static boolean isWord(CharSequence text, int start, int end) {
+        if (start > 0 && isWordChar(text.charAt(start - 1))) return false;
+        if (end < text.length() && isWordChar(text.charAt(end))) return false;
+        return true;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isAlphabetic(c) || Character.isDigit(c) || c == '_' || c == '$';
+    }
+}
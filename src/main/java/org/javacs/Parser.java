@@ -5,7 +5,11 @@ import com.sun.source.doctree.DocTree;
 import com.sun.source.tree.*;
 import com.sun.source.util.*;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.util.*;
 import java.util.logging.Logger;
@@ -17,17 +21,22 @@ import org.javacs.lsp.*;
 
 class Parser {
     private static final JavaCompiler COMPILER = ServiceLoader.load(JavaCompiler.class).iterator().next();
-    private static final SourceFileManager FILE_MANAGER = new SourceFileManager();
+    // File managers aren't thread-safe, so each thread that parses gets its own
+    private static final ThreadLocal<SourceFileManager> FILE_MANAGER = ThreadLocal.withInitial(SourceFileManager::new);
 
     /** Create a task that compiles a single file */
     private static JavacTask singleFileTask(JavaFileObject file) {
         return (JavacTask)
-                COMPILER.getTask(null, FILE_MANAGER, Parser::ignoreError, List.of(), List.of(), List.of(file));
+                COMPILER.getTask(null, FILE_MANAGER.get(), Parser::ignoreError, List.of(), List.of(), List.of(file));
     }
 
     private final String contents;
     private final JavacTask task;
     private final CompilationUnitTree root;
+    /** If this is an outline that was reparsed from an earlier version, the symbols and folding ranges of the file */
+    private List<SymbolInformation> symbols;
+
+    private List<FoldingRange> folds;
 
     private Parser(JavaFileObject file) {
         Objects.requireNonNull(file);
@@ -43,16 +52,242 @@ class Parser {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        // Parsers are shared between threads, so create Trees now, instead of racing to create it later
+        Trees.instance(task);
+    }
+
+    static final long DEFAULT_PARSE_CACHE_SIZE = 4_000_000;
+
+    /** Recently-parsed files, keyed on version and bounded by the total length of their source */
+    private static final Cache<Integer, Parser> cacheParse =
+            new Cache<>(DEFAULT_PARSE_CACHE_SIZE, parse -> parse.contents.length());
+
+    /** Limit the parse cache, and the cache of erased method bodies, to `maxChars` total characters of source each */
+    static void setParseCacheSize(long maxChars) {
+        cacheParse.setMaxWeight(maxChars);
+        cacheEraseMethodBodies.setMaxWeight(maxChars);
     }
 
+    /** Parse the current version of `file`, or reuse the parse from an earlier request if `file` hasn't changed */
     static Parser parseFile(Path file) {
-        return new Parser(new SourceFileObject(file));
+        var version = FileStore.version(file);
+        var cached = cacheParse.find(file, version);
+        if (cached.isPresent()) return cached.get();
+        var parse = new Parser(new SourceFileObject(file));
+        // Only keep the latest version of each file
+        cacheParse.purge(file);
+        cacheParse.load(file, version, parse);
+        return parse;
     }
 
     static Parser parseJavaFileObject(JavaFileObject file) {
         return new Parser(file);
     }
 
+    /** Parses of files from the doc path, which don't change, so they are only evicted to save space */
+    private static final Map<URI, Parser> cacheDocs =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<URI, Parser> eldest) {
+                    return size() > 32;
+                }
+            };
+
+    /** Parse a file from the doc path, or reuse an earlier parse of the same file */
+    static Parser parseDocFile(JavaFileObject file) {
+        var uri = file.toUri();
+        synchronized (cacheDocs) {
+            var cached = cacheDocs.get(uri);
+            if (cached != null) return cached;
+        }
+        var parse = new Parser(file);
+        synchronized (cacheDocs) {
+            cacheDocs.put(uri, parse);
+        }
+        return parse;
+    }
+
+    private static class Outline {
+        final String contents;
+        final Parser parse;
+
+        Outline(String contents, Parser parse) {
+            this.contents = contents;
+            this.parse = parse;
+        }
+    }
+
+    /** The latest outline of each recently-edited document, which the next version is reparsed from */
+    private static final Map<Path, Outline> outlines =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Path, Outline> eldest) {
+                    return size() > 32;
+                }
+            };
+
+    /**
+     * Parse enough of `file` to find its codeLensDeclarations, documentSymbols and foldingRanges. When an open document
+     * has been edited inside a single method body, only that method is reparsed: the bodies of the other methods are
+     * blanked out, and the symbols and folding ranges inside them are carried over from the previous version. The
+     * result must not be used for anything that looks inside method bodies.
+     */
+    static Parser outline(Path file) {
+        if (!FileStore.activeDocuments().contains(file)) return parseFile(file);
+        var contents = FileStore.contents(file);
+        Outline previous;
+        synchronized (outlines) {
+            previous = outlines.get(file);
+        }
+        if (previous != null && previous.contents.equals(contents)) return previous.parse;
+        Parser parse = null;
+        if (previous != null) {
+            parse = reparse(previous, file, contents);
+        }
+        if (parse == null) {
+            parse = parseFile(file);
+        }
+        synchronized (outlines) {
+            outlines.put(file, new Outline(contents, parse));
+        }
+        return parse;
+    }
+
+    /** Reparse `contents`, a new version of `previous`, or return null if the edit isn't inside one method body */
+    private static Parser reparse(Outline previous, Path file, String contents) {
+        var before = previous.contents;
+        // Find the edited region, which is [start, beforeEnd) in the old version and [start, afterEnd) in the new one
+        var max = Math.min(before.length(), contents.length());
+        var start = 0;
+        while (start < max && before.charAt(start) == contents.charAt(start)) start++;
+        var suffix = 0;
+        while (suffix < max - start
+                && before.charAt(before.length() - 1 - suffix) == contents.charAt(contents.length() - 1 - suffix)) {
+            suffix++;
+        }
+        var beforeEnd = before.length() - suffix;
+        var delta = contents.length() - before.length();
+        // Find the method body, including its braces, that the edit is inside
+        var bodies = previous.parse.methodBodies();
+        var edited = -1;
+        for (var i = 0; i < bodies.size(); i++) {
+            var body = bodies.get(i);
+            if (body[0] < start && beforeEnd < body[1]) {
+                edited = i;
+            }
+        }
+        if (edited == -1) return null;
+        // Blank out the bodies of the other methods, and find where every body should be after the edit
+        var outline = new StringBuilder(contents);
+        var expected = new ArrayList<int[]>();
+        for (var i = 0; i < bodies.size(); i++) {
+            var body = bodies.get(i);
+            if (i == edited) {
+                expected.add(new int[] {body[0], body[1] + delta});
+                continue;
+            }
+            var bodyStart = body[0] < start ? body[0] : body[0] + delta;
+            var bodyEnd = body[1] < start ? body[1] : body[1] + delta;
+            expected.add(new int[] {bodyStart, bodyEnd});
+            erase(outline, bodyStart + 1, bodyEnd - 1);
+        }
+        var parse = new Parser(new SourceFileObject(file, outline.toString(), Instant.now()));
+        // If the edit changed the shape of the file, for example by closing the method early, give up
+        var after = parse.methodBodies();
+        if (after.size() != expected.size()) return null;
+        for (var i = 0; i < after.size(); i++) {
+            if (!Arrays.equals(after.get(i), expected.get(i))) return null;
+        }
+        // Carry over symbols and folding ranges from inside the bodies that were blanked out
+        var shift = new PositionShift(before, beforeEnd, contents, beforeEnd + delta);
+        var unchanged = new ArrayList<int[]>(bodies);
+        unchanged.remove(edited);
+        var symbols = parse.findSymbolsMatching("");
+        for (var s : previous.parse.documentSymbols()) {
+            if (!shift.isInside(unchanged, s.location.range.start)) continue;
+            var copy = new SymbolInformation();
+            copy.name = s.name;
+            copy.kind = s.kind;
+            copy.deprecated = s.deprecated;
+            copy.containerName = s.containerName;
+            copy.location = new Location(s.location.uri, shift.apply(s.location.range));
+            symbols.add(copy);
+        }
+        var folds = parse.foldingRanges();
+        for (var r : previous.parse.foldingRanges()) {
+            var rangeStart = new Position(r.startLine, r.startCharacter);
+            if (!shift.isInside(unchanged, rangeStart)) continue;
+            var shifted = shift.apply(new Range(rangeStart, new Position(r.endLine, r.endCharacter)));
+            folds.add(
+                    new FoldingRange(
+                            shifted.start.line,
+                            shifted.start.character,
+                            shifted.end.line,
+                            shifted.end.character,
+                            r.kind));
+        }
+        parse.symbols = symbols;
+        parse.folds = folds;
+        return parse;
+    }
+
+    /** Converts positions in the old version of an edited document to positions in the new version */
+    private static class PositionShift {
+        private final LineIndex beforeLines;
+        private final Position beforeEnd, afterEnd;
+
+        PositionShift(String before, int beforeEnd, String after, int afterEnd) {
+            this.beforeLines = LineIndex.of(before);
+            this.beforeEnd = beforeLines.position(beforeEnd);
+            this.afterEnd = LineIndex.of(after).position(afterEnd);
+        }
+
+        /** Is `position`, in the old version, inside one of `bodies`, not counting their braces? */
+        boolean isInside(List<int[]> bodies, Position position) {
+            var offset = beforeLines.offset(position.line, position.character);
+            for (var body : bodies) {
+                if (body[0] < offset && offset < body[1] - 1) return true;
+            }
+            return false;
+        }
+
+        Range apply(Range range) {
+            return new Range(apply(range.start), apply(range.end));
+        }
+
+        Position apply(Position p) {
+            if (p.line > beforeEnd.line) {
+                return new Position(p.line + afterEnd.line - beforeEnd.line, p.character);
+            }
+            if (p.line == beforeEnd.line && p.character >= beforeEnd.character) {
+                return new Position(afterEnd.line, p.character - beforeEnd.character + afterEnd.character);
+            }
+            return p;
+        }
+    }
+
+    /** The [start, end) of the body of each method that isn't inside another method, in source order */
+    private List<int[]> methodBodies() {
+        var pos = Trees.instance(task).getSourcePositions();
+        var bodies = new ArrayList<int[]>();
+        class FindBodies extends TreeScanner<Void, Void> {
+            @Override
+            public Void visitMethod(MethodTree t, Void __) {
+                var body = t.getBody();
+                if (body != null) {
+                    var start = (int) pos.getStartPosition(root, body);
+                    var end = (int) pos.getEndPosition(root, body);
+                    if (start != -1 && end != -1) {
+                        bodies.add(new int[] {start, end});
+                    }
+                }
+                return null;
+            }
+        }
+        new FindBodies().scan(root, null);
+        return bodies;
+    }
+
     boolean showReferencesCodeLens(TreePath path) {
         return !isTestMethod(path)
                 && !isTestClass(path)
@@ -244,6 +479,7 @@ class Parser {
     }
 
     List<FoldingRange> foldingRanges() {
+        if (folds != null) return folds;
         var imports = new ArrayList<TreePath>();
         var blocks = new ArrayList<TreePath>();
         // TODO find comment trees
@@ -311,15 +547,10 @@ class Parser {
         var end = (int) pos.getEndPosition(t.getCompilationUnit(), t.getLeaf());
 
         // If this is a class tree, adjust start position to '{'
+        // Use the text that was parsed, because the source file may have changed since
         if (t.getLeaf() instanceof ClassTree) {
-            CharSequence content;
-            try {
-                content = t.getCompilationUnit().getSourceFile().getCharContent(true);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            for (var i = start; i < content.length(); i++) {
-                if (content.charAt(i) == '{') {
+            for (var i = start; i < contents.length(); i++) {
+                if (contents.charAt(i) == '{') {
                     start = i;
                     break;
                 }
@@ -390,7 +621,8 @@ class Parser {
         return Optional.ofNullable(find.found);
     }
 
-    DocCommentTree doc(TreePath path) {
+    // Doc comments are parsed lazily, so don't let two threads do it at once
+    synchronized DocCommentTree doc(TreePath path) {
         // Find ptr in the file
         // Find the documentation attached to el
         var docs = DocTrees.instance(task);
@@ -497,6 +729,7 @@ class Parser {
     }
 
     List<SymbolInformation> documentSymbols() {
+        if (symbols != null) return symbols;
         return findSymbolsMatching("");
     }
 
@@ -615,7 +848,7 @@ class Parser {
                 (JavacTask)
                         COMPILER.getTask(
                                 null,
-                                FILE_MANAGER,
+                                FILE_MANAGER.get(),
                                 Parser::ignoreError,
                                 List.of(),
                                 null,
@@ -884,25 +1117,121 @@ class Parser {
     }
 
     String prune(String name) {
-        // Find all occurrences of name in contents
+        return prune(new MultiStringSearch(List.of(name)));
+    }
+
+    /** Erase all blocks that don't contain one of the words `search` was compiled from */
+    String prune(MultiStringSearch search) {
+        // Find all occurrences of the words in contents
         var file = Paths.get(root.getSourceFile().toUri());
         var contents = FileStore.contents(file);
-        var list = new ArrayList<Long>();
-        var pattern = Pattern.compile("\\b" + Pattern.quote(name) + "\\b");
-        var matcher = pattern.matcher(contents);
-        while (matcher.find()) {
-            list.add((long) matcher.start());
-        }
-        var offsets = new long[list.size()];
-        for (var i = 0; i < list.size(); i++) {
-            offsets[i] = list.get(i);
-        }
-        // Erase all blocks that don't contain name
+        var offsets = search.offsets(contents, true);
+        // Erase all blocks that don't contain a word
         var buffer = new StringBuilder(contents);
         var pos = Trees.instance(task).getSourcePositions();
         return prune(root, pos, buffer, offsets, false);
     }
 
+    /** Erase the statements in every block, leaving only declarations and signatures */
+    String eraseMethodBodies() {
+        var pos = Trees.instance(task).getSourcePositions();
+        var buffer = new StringBuilder(contents);
+        return prune(root, pos, buffer, new long[0], false);
+    }
+
+    /** Erased sources are about as long as the originals, so they are bounded by length like the parse cache */
+    private static final Cache<Void, String> cacheEraseMethodBodies =
+            new Cache<>(DEFAULT_PARSE_CACHE_SIZE, String::length);
+
+    /** The contents of `file` with method bodies erased, cached until `file` is modified */
+    static String eraseMethodBodies(Path file) {
+        var cached = cacheEraseMethodBodies.find(file, null);
+        if (cached.isPresent()) return cached.get();
+        var erased = parseFile(file).eraseMethodBodies();
+        cacheEraseMethodBodies.load(file, null, erased);
+        return erased;
+    }
+
+    /**
+     * A fingerprint of the declarations in this file that other files can see: the package, imports, and the
+     * signatures of non-private classes, methods and fields. Editing a method body leaves the fingerprint unchanged,
+     * so anything other files have computed about this file remains valid.
+     */
+    String apiFingerprint() {
+        var api = new StringBuilder();
+        api.append(root.getPackageName()).append('\n');
+        for (var i : root.getImports()) {
+            api.append(i).append('\n');
+        }
+        class FindApi extends TreeScanner<Void, Void> {
+            boolean isPrivate(ModifiersTree t) {
+                return t.getFlags().contains(Modifier.PRIVATE);
+            }
+
+            @Override
+            public Void visitClass(ClassTree t, Void __) {
+                if (isPrivate(t.getModifiers())) return null;
+                api.append(t.getModifiers())
+                        .append(t.getKind())
+                        .append(' ')
+                        .append(t.getSimpleName())
+                        .append(t.getTypeParameters())
+                        .append(" extends ")
+                        .append(t.getExtendsClause())
+                        .append(" implements ")
+                        .append(t.getImplementsClause())
+                        .append('\n');
+                return scan(t.getMembers(), null);
+            }
+
+            @Override
+            public Void visitMethod(MethodTree t, Void __) {
+                if (isPrivate(t.getModifiers())) return null;
+                api.append(t.getModifiers())
+                        .append(t.getTypeParameters())
+                        .append(t.getReturnType())
+                        .append(' ')
+                        .append(t.getName())
+                        .append('(');
+                for (var p : t.getParameters()) {
+                    api.append(p.getType()).append(',');
+                }
+                api.append(')').append(t.getThrows()).append(t.getDefaultValue()).append('\n');
+                return null;
+            }
+
+            @Override
+            public Void visitVariable(VariableTree t, Void __) {
+                if (isPrivate(t.getModifiers())) return null;
+                api.append(t.getModifiers()).append(t.getType()).append(' ').append(t.getName());
+                // Constants are copied into the files that use them
+                if (t.getModifiers().getFlags().contains(Modifier.FINAL)) {
+                    api.append(" = ").append(t.getInitializer());
+                }
+                api.append('\n');
+                return null;
+            }
+        }
+        new FindApi().scan(root.getTypeDecls(), null);
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(api.toString().getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final Cache<Void, String> cacheApiFingerprint = new Cache<>();
+
+    /** The API fingerprint of `file`, cached until `file` is modified */
+    static String apiFingerprint(Path file) {
+        var cached = cacheApiFingerprint.find(file, null);
+        if (cached.isPresent()) return cached.get();
+        var fingerprint = parseFile(file).apiFingerprint();
+        cacheApiFingerprint.load(file, null, fingerprint);
+        return fingerprint;
+    }
+
     boolean insideClass(long cursor) {
         var path = findPath(cursor);
         while (path != null) {
@@ -934,6 +1263,7 @@ class Parser {
             // so it's an effective optimization
             var matches = new HashSet<Path>();
             for (var file : hasWord) {
+                CancelToken.checkCancelled();
                 if (parseFile(file).mightContainDefinition(to)) {
                     matches.add(file);
                 }
@@ -1019,35 +1349,11 @@ class Parser {
         return FileStore.findDeclaringFile(name);
     }
 
-    private static Cache<String, Boolean> cacheContainsWord = new Cache<>();
-
     private static List<Path> containsWord(Collection<Path> allFiles, String name) {
-        // Figure out all files that need to be re-scanned
-        var outOfDate = new ArrayList<Path>();
-        for (var file : allFiles) {
-            // If we know file doesn't contain a prefix of word, we know it doesn't contain the word
-            var prefix = name.substring(0, name.length() - 1);
-            if (!prefix.isEmpty() && cacheContainsWord.has(file, prefix) && !cacheContainsWord.get(file, prefix)) {
-                cacheContainsWord.load(file, name, false);
-                continue;
-            }
-            // Otherwise, scan the file in the next loop
-            if (cacheContainsWord.needs(file, name)) {
-                outOfDate.add(file);
-            }
-        }
-
-        // Update those files in cacheContainsWord
-        LOG.info(String.format("...scanning %d out-of-date files for the word `%s`", outOfDate.size(), name));
-        for (var file : outOfDate) {
-            var found = StringSearch.containsWord(file, name);
-            cacheContainsWord.load(file, name, found);
-        }
-
-        // Assemble list of all files that contain name
+        var index = WordIndex.filesContaining(name);
         var hasWord = new ArrayList<Path>();
         for (var file : allFiles) {
-            if (cacheContainsWord.get(file, name)) {
+            if (index.contains(file)) {
                 hasWord.add(file);
             }
         }
@@ -1056,18 +1362,13 @@ class Parser {
         return hasWord;
     }
 
-    private static Cache<String, Boolean> cacheContainsImport = new Cache<>();
-
     private static List<Path> containsImport(Collection<Path> allFiles, String toPackage, String toClass) {
         // Figure out which files import `to`, explicitly or implicitly
-        var qName = toPackage.isEmpty() ? toClass : toPackage + "." + toClass;
+        if (toPackage.isEmpty()) return new ArrayList<>(allFiles);
+        var index = WordIndex.filesImporting(toPackage, toClass);
         var hasImport = new ArrayList<Path>();
         for (var file : allFiles) {
-            if (cacheContainsImport.needs(file, qName)) {
-                var found = StringSearch.containsImport(file, toPackage, toClass);
-                cacheContainsImport.load(file, qName, found);
-            }
-            if (cacheContainsImport.get(file, qName)) {
+            if (index.contains(file)) {
                 hasImport.add(file);
             }
         }
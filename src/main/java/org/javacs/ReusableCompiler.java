@@ -43,10 +43,13 @@ import com.sun.tools.javac.util.Context;
 import com.sun.tools.javac.util.DefinedBy;
 import com.sun.tools.javac.util.DefinedBy.Api;
 import com.sun.tools.javac.util.Log;
+import java.io.IOException;
 import java.io.Writer;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -81,17 +84,49 @@ class ReusableCompiler {
     private static final Logger LOG = Logger.getLogger("main");
     private static final JavacTool systemProvider = JavacTool.create();
 
-    private List<String> currentOptions = new ArrayList<>();
-    private ReusableContext currentContext;
-    private boolean checkedOut;
+    /** The most contexts we will keep at once; each one holds a complete javac symbol table */
+    static final int DEFAULT_MAX_CONTEXTS = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() / 2));
+
+    private final int maxContexts;
+    private final Supplier<? extends JavaFileManager> newFileManager;
+    /** slots is the pool of contexts, both idle and checked-out; guarded by `this` */
+    private final List<Slot> slots = new ArrayList<>();
+    /** Pool metrics; guarded by `this` */
+    private int borrows, waits, creations, evictions;
+
+    /**
+     * A context in the pool, together with the file manager it uses. File managers aren't thread-safe, so each context
+     * gets its own. While a context is idle, the pool only holds it by a SoftReference, so it can be evicted when
+     * memory is low.
+     */
+    private static class Slot {
+        final List<String> options;
+        final JavaFileManager fileManager;
+        SoftReference<ReusableContext> context;
+        boolean checkedOut;
+
+        Slot(List<String> options, JavaFileManager fileManager) {
+            this.options = options;
+            this.fileManager = fileManager;
+        }
+    }
+
+    ReusableCompiler(Supplier<? extends JavaFileManager> newFileManager) {
+        this(newFileManager, DEFAULT_MAX_CONTEXTS);
+    }
+
+    ReusableCompiler(Supplier<? extends JavaFileManager> newFileManager, int maxContexts) {
+        this.newFileManager = newFileManager;
+        this.maxContexts = maxContexts;
+    }
 
     /**
      * Creates a new task as if by {@link javax.tools.JavaCompiler#getTask} and runs the provided worker with it. The
      * task is only valid while the worker is running. The internal structures may be reused from some previous
-     * compilation.
+     * compilation. Up to maxContexts tasks can be borrowed at once; if they are all in use, this blocks until one is
+     * closed.
      *
      * @param out a Writer for additional output from the compiler; use {@code System.err} if {@code null}
-     * @param fileManager a file manager; if {@code null} use the compiler's standard filemanager
      * @param diagnosticListener a diagnostic listener; if {@code null} use the compiler's default method for reporting
      *     diagnostics
      * @param options compiler options, {@code null} means no options
@@ -105,52 +140,180 @@ class ReusableCompiler {
      */
     Borrow getTask(
             Writer out,
-            JavaFileManager fileManager,
             DiagnosticListener<? super JavaFileObject> diagnosticListener,
             Iterable<String> options,
             Iterable<String> classes,
             Iterable<? extends JavaFileObject> compilationUnits) {
-        if (checkedOut) {
-            throw new RuntimeException("Compiler is already in-use!");
-        }
-        checkedOut = true;
         List<String> opts =
                 StreamSupport.stream(options.spliterator(), false).collect(Collectors.toCollection(ArrayList::new));
-        if (!opts.equals(currentOptions)) {
-            LOG.warning(String.format("Options changed from %s to %s, creating new compiler", options, opts));
-            currentOptions = opts;
-            currentContext = new ReusableContext(opts);
+        var slot = checkOut(opts);
+        try {
+            var context = slot.context.get();
+            if (context == null) {
+                context = new ReusableContext(opts);
+                slot.context = new SoftReference<>(context);
+            }
+            JavacTaskImpl task =
+                    (JavacTaskImpl)
+                            systemProvider.getTask(
+                                    out,
+                                    slot.fileManager,
+                                    diagnosticListener,
+                                    opts,
+                                    classes,
+                                    compilationUnits,
+                                    context);
+
+            task.addTaskListener(context);
+
+            return new Borrow(task, context, slot);
+        } catch (RuntimeException e) {
+            remove(slot);
+            throw e;
+        }
+    }
+
+    /** Find an idle slot with the same options, or make room for a new one, waiting if every slot is in use */
+    private synchronized Slot checkOut(List<String> options) {
+        borrows++;
+        var waited = false;
+        while (true) {
+            // Forget idle contexts that the garbage collector has reclaimed
+            for (var it = slots.iterator(); it.hasNext(); ) {
+                var slot = it.next();
+                if (!slot.checkedOut && slot.context.get() == null) {
+                    LOG.info("Compiler context was reclaimed by the garbage collector");
+                    evictions++;
+                    it.remove();
+                    closeFileManager(slot);
+                }
+            }
+            // Reuse an idle context with the same options
+            for (var slot : slots) {
+                if (!slot.checkedOut && slot.options.equals(options)) {
+                    slot.checkedOut = true;
+                    return slot;
+                }
+            }
+            // Evict an idle context with different options, if the pool is full
+            if (slots.size() >= maxContexts) {
+                for (var it = slots.iterator(); it.hasNext(); ) {
+                    var slot = it.next();
+                    if (!slot.checkedOut) {
+                        var message = "Options changed from %s to %s, evicting compiler";
+                        LOG.warning(String.format(message, slot.options, options));
+                        evictions++;
+                        it.remove();
+                        closeFileManager(slot);
+                        break;
+                    }
+                }
+            }
+            // Create a new context
+            if (slots.size() < maxContexts) {
+                var slot = new Slot(options, newFileManager.get());
+                slot.context = new SoftReference<>(null);
+                slot.checkedOut = true;
+                slots.add(slot);
+                creations++;
+                LOG.info(String.format("Created compiler context %d/%d (%s)", slots.size(), maxContexts, metrics()));
+                return slot;
+            }
+            // Every context is in use; wait for one to be returned
+            if (!waited) {
+                waits++;
+                waited = true;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
         }
-        JavacTaskImpl task =
-                (JavacTaskImpl)
-                        systemProvider.getTask(
-                                out, fileManager, diagnosticListener, opts, classes, compilationUnits, currentContext);
+    }
 
-        task.addTaskListener(currentContext);
+    private synchronized void checkIn(Slot slot) {
+        slot.checkedOut = false;
+        notifyAll();
+    }
+
+    private synchronized void remove(Slot slot) {
+        slots.remove(slot);
+        closeFileManager(slot);
+        notifyAll();
+    }
+
+    private static void closeFileManager(Slot slot) {
+        try {
+            slot.fileManager.close();
+        } catch (IOException e) {
+            LOG.warning("Failed to close file manager: " + e.getMessage());
+        }
+    }
+
+    /** Summary of how the pool has been used, for logging */
+    synchronized String metrics() {
+        return String.format(
+                "%d borrows, %d waits, %d contexts created, %d evicted", borrows, waits, creations, evictions);
+    }
 
-        return new Borrow(task, currentContext);
+    synchronized int borrows() {
+        return borrows;
+    }
+
+    synchronized int waits() {
+        return waits;
+    }
+
+    synchronized int creations() {
+        return creations;
+    }
+
+    synchronized int evictions() {
+        return evictions;
     }
 
     class Borrow implements AutoCloseable {
         public final JavacTask task;
+        /** The file manager used by task; it belongs to this borrow until it's closed */
+        public final JavaFileManager fileManager;
+        // Strong references, so the context can't be reclaimed while it's in use
+        private final ReusableContext context;
+        private final Slot slot;
 
-        Borrow(JavacTask task, ReusableContext ctx) {
+        Borrow(JavacTask task, ReusableContext context, Slot slot) {
             this.task = task;
+            this.fileManager = slot.fileManager;
+            this.context = context;
+            this.slot = slot;
         }
 
         @Override
         public void close() {
-            // not returning the context to the pool if task crashes with an exception
-            // the task/context may be in a broken state
-            currentContext.clear();
             try {
+                context.clear();
                 var method = JavacTaskImpl.class.getDeclaredMethod("cleanup");
                 method.setAccessible(true);
                 method.invoke(task);
             } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                // not returning the context to the pool if cleanup fails
+                remove(slot);
                 throw new RuntimeException(e);
+            } catch (RuntimeException e) {
+                remove(slot);
+                throw e;
             }
-            checkedOut = false;
+            checkIn(slot);
+        }
+
+        /**
+         * Give back the compiler after the task crashed or was cancelled part-way through. The context may be in a
+         * broken state, so throw it away and start fresh with the next task.
+         */
+        void discard() {
+            LOG.warning("Discarding compiler context after an interrupted task");
+            remove(slot);
         }
     }
 
@@ -0,0 +1,241 @@
+package org.javacs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rope is an immutable string, stored as a balanced tree of chunks. Each node knows its length and how many newlines
+ * it contains, so replacing a range of text and converting between offsets and line/character positions take time
+ * proportional to the depth of the tree, and every version of an edited document shares most of its chunks with the
+ * previous version.
+ */
+class Rope implements CharSequence {
+    /** Chunks are split when they grow longer than MAX_LEAF, and merged when neighbors fit in MAX_LEAF together */
+    static final int MAX_LEAF = 1024;
+
+    /** If this is a leaf, text is its contents, otherwise left and right are its children */
+    private final String text;
+
+    private final Rope left, right;
+    private final int length, newlines, depth;
+    /** flat is the contents of this rope as a String, computed the first time someone asks for it */
+    private volatile String flat;
+
+    private Rope(String text) {
+        this.text = text;
+        this.left = null;
+        this.right = null;
+        this.length = text.length();
+        this.newlines = countNewlines(text);
+        this.depth = 0;
+    }
+
+    private Rope(Rope left, Rope right) {
+        this.text = null;
+        this.left = left;
+        this.right = right;
+        this.length = left.length + right.length;
+        this.newlines = left.newlines + right.newlines;
+        this.depth = 1 + Math.max(left.depth, right.depth);
+    }
+
+    private static int countNewlines(String text) {
+        var count = 0;
+        for (var i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') count++;
+        }
+        return count;
+    }
+
+    static Rope of(String text) {
+        var leaves = new ArrayList<Rope>();
+        for (var start = 0; start < text.length(); start += MAX_LEAF) {
+            var end = Math.min(text.length(), start + MAX_LEAF);
+            leaves.add(new Rope(text.substring(start, end)));
+        }
+        if (leaves.isEmpty()) return new Rope("");
+        var rope = build(leaves, 0, leaves.size());
+        rope.flat = text;
+        return rope;
+    }
+
+    /** Build a balanced tree from leaves[start, end) */
+    private static Rope build(List<Rope> leaves, int start, int end) {
+        if (end - start == 1) return leaves.get(start);
+        var mid = (start + end) / 2;
+        return new Rope(build(leaves, start, mid), build(leaves, mid, end));
+    }
+
+    private boolean isLeaf() {
+        return text != null;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /** The number of lines, which is one more than the number of newlines */
+    int lines() {
+        return newlines + 1;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index + " is outside [0, " + length + ")");
+        }
+        var node = this;
+        while (!node.isLeaf()) {
+            if (index < node.left.length) {
+                node = node.left;
+            } else {
+                index -= node.left.length;
+                node = node.right;
+            }
+        }
+        return node.text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /** The offset of the first character of `line` (0-based), or length() if there is no such line */
+    int lineStart(int line) {
+        if (line <= 0) return 0;
+        if (line > newlines) return length;
+        // Find the offset just after the line-th newline
+        var node = this;
+        var offset = 0;
+        while (!node.isLeaf()) {
+            if (line <= node.left.newlines) {
+                node = node.left;
+            } else {
+                line -= node.left.newlines;
+                offset += node.left.length;
+                node = node.right;
+            }
+        }
+        var i = -1;
+        for (var seen = 0; seen < line; seen++) {
+            i = node.text.indexOf('\n', i + 1);
+        }
+        return offset + i + 1;
+    }
+
+    /** The line (0-based) that contains `offset` */
+    int line(int offset) {
+        offset = Math.max(0, Math.min(offset, length));
+        var node = this;
+        var line = 0;
+        while (!node.isLeaf()) {
+            if (offset < node.left.length) {
+                node = node.left;
+            } else {
+                offset -= node.left.length;
+                line += node.left.newlines;
+                node = node.right;
+            }
+        }
+        for (var i = 0; i < offset; i++) {
+            if (node.text.charAt(i) == '\n') line++;
+        }
+        return line;
+    }
+
+    /** Convert a 0-based line and character to an offset, clamping positions past the end of the line or file */
+    int offset(int line, int character) {
+        var start = lineStart(line);
+        var end = line >= newlines ? length : lineStart(line + 1) - 1;
+        return Math.min(start + Math.max(0, character), end);
+    }
+
+    /** A new rope with [start, end) replaced by `replacement` */
+    Rope replace(int start, int end, String replacement) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException("[" + start + ", " + end + ") is outside [0, " + length + ")");
+        }
+        var result = concat(prefix(start), of(replacement));
+        result = concat(result, suffix(end));
+        return result.depth > maxDepth(result.length) ? rebalance(result) : result;
+    }
+
+    /** The first `end` characters of this rope */
+    private Rope prefix(int end) {
+        if (end <= 0) return EMPTY;
+        if (end >= length) return this;
+        if (isLeaf()) return new Rope(text.substring(0, end));
+        if (end <= left.length) return left.prefix(end);
+        return concat(left, right.prefix(end - left.length));
+    }
+
+    /** The characters of this rope from `start` on */
+    private Rope suffix(int start) {
+        if (start <= 0) return this;
+        if (start >= length) return EMPTY;
+        if (isLeaf()) return new Rope(text.substring(start));
+        if (start >= left.length) return right.suffix(start - left.length);
+        return concat(left.suffix(start), right);
+    }
+
+    private static Rope concat(Rope left, Rope right) {
+        if (left.length == 0) return right;
+        if (right.length == 0) return left;
+        // Merge small leaves, so repeated single-character edits don't make a tree of tiny chunks
+        if (left.isLeaf() && right.isLeaf() && left.length + right.length <= MAX_LEAF) {
+            return new Rope(left.text + right.text);
+        }
+        if (!left.isLeaf() && left.right.isLeaf() && right.isLeaf()) {
+            if (left.right.length + right.length <= MAX_LEAF) {
+                return new Rope(left.left, new Rope(left.right.text + right.text));
+            }
+        }
+        return new Rope(left, right);
+    }
+
+    private static int maxDepth(int length) {
+        var leaves = Math.max(1, length / (MAX_LEAF / 2));
+        return 2 * (32 - Integer.numberOfLeadingZeros(leaves)) + 4;
+    }
+
+    private static Rope rebalance(Rope rope) {
+        var leaves = new ArrayList<Rope>();
+        collectLeaves(rope, leaves);
+        if (leaves.isEmpty()) return EMPTY;
+        return build(leaves, 0, leaves.size());
+    }
+
+    private static void collectLeaves(Rope rope, List<Rope> leaves) {
+        if (rope.isLeaf()) {
+            if (rope.length > 0) leaves.add(rope);
+            return;
+        }
+        collectLeaves(rope.left, leaves);
+        collectLeaves(rope.right, leaves);
+    }
+
+    private void appendTo(StringBuilder buffer) {
+        if (isLeaf()) {
+            buffer.append(text);
+        } else {
+            left.appendTo(buffer);
+            right.appendTo(buffer);
+        }
+    }
+
+    @Override
+    public String toString() {
+        var result = flat;
+        if (result == null) {
+            var buffer = new StringBuilder(length);
+            appendTo(buffer);
+            result = buffer.toString();
+            flat = result;
+        }
+        return result;
+    }
+
+    private static final Rope EMPTY = new Rope("");
+}
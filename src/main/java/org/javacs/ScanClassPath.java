@@ -9,8 +9,16 @@ import java.net.URLClassLoader;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -112,7 +120,46 @@ class ScanClassPath {
         "jdk.zipfs",
     };
 
+    private static ClassNameSnapshot snapshot;
+
+    /** The snapshot of class names from earlier scans, which is loaded the first time it's needed */
+    static synchronized ClassNameSnapshot snapshot() {
+        if (snapshot == null) {
+            snapshot = new ClassNameSnapshot(ClassNameSnapshot.defaultStorage());
+        }
+        return snapshot;
+    }
+
+    /** Use a different snapshot, for example in tests */
+    static synchronized void setSnapshot(ClassNameSnapshot newSnapshot) {
+        snapshot = newSnapshot;
+    }
+
     static Set<String> jdkTopLevelClasses() {
+        // The JDK is identified by its version, and by the size and modified time of its module image
+        var key = "jrt:" + System.getProperty("java.home") + ":" + Runtime.version();
+        var image = Paths.get(System.getProperty("java.home"), "lib", "modules");
+        long size = 0, modified = 0;
+        try {
+            size = Files.size(image);
+            modified = Files.getLastModifiedTime(image).toMillis();
+        } catch (IOException e) {
+            LOG.warning("Couldn't read " + image + ", so JDK classes can't be cached (" + e.getMessage() + ")");
+        }
+        var snapshot = snapshot();
+        var cached = snapshot.find(key, size, modified);
+        if (cached.isPresent()) {
+            var classes = new HashSet<String>(cached.get().classes);
+            LOG.info(String.format("Found %d classes in the java platform, from a snapshot", classes.size()));
+            return classes;
+        }
+        var classes = scanJdk();
+        snapshot.put(key, size, modified, new ClassNameSnapshot.Entry(new ArrayList<>(classes), List.of()));
+        snapshot.save();
+        return classes;
+    }
+
+    private static Set<String> scanJdk() {
         LOG.info("Searching for top-level classes in the JDK");
 
         var classes = new HashSet<String>();
@@ -140,9 +187,111 @@ class ScanClassPath {
         return classes;
     }
 
+    /** Opening jars is mostly waiting for the disk, so scan more jars at once than there are processors */
+    private static final ForkJoinPool SCAN_POOL =
+            new ForkJoinPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+
+    /** Counts of the work done by one scan of the class path, updated by all the threads doing the scan */
+    private static class ScanStats {
+        final AtomicInteger scannedJars = new AtomicInteger(), scannedClasses = new AtomicInteger();
+        final AtomicInteger cachedJars = new AtomicInteger();
+    }
+
     static Set<String> classPathTopLevelClasses(Set<Path> classPath) {
         LOG.info(String.format("Searching for top-level classes in %d classpath locations", classPath.size()));
 
+        var started = System.nanoTime();
+        var snapshot = snapshot();
+        var classes = ConcurrentHashMap.<String>newKeySet();
+        var directories = new ArrayList<Path>();
+        var seen = new HashSet<Path>();
+        var stats = new ScanStats();
+        // Scan the class path in rounds, because each jar can add more jars through the Class-Path of its manifest
+        var next = new ArrayList<Path>(classPath);
+        while (!next.isEmpty()) {
+            var jars = new ArrayList<Path>();
+            for (var entry : next) {
+                Path real;
+                try {
+                    real = entry.toRealPath();
+                } catch (IOException e) {
+                    // Entry doesn't exist
+                    continue;
+                }
+                if (!seen.add(real)) continue;
+                if (Files.isDirectory(real)) {
+                    directories.add(real);
+                } else {
+                    jars.add(real);
+                }
+            }
+            var links = new ConcurrentLinkedQueue<Path>();
+            Runnable scanJars = () -> jars.parallelStream().forEach(j -> addJar(snapshot, j, classes, links, stats));
+            SCAN_POOL.submit(scanJars).join();
+            next = new ArrayList<>(links);
+        }
+        classes.addAll(directoryTopLevelClasses(directories));
+        // Forget jars that have been deleted, so the snapshot doesn't grow forever
+        snapshot.retain(key -> key.startsWith("jrt:") || Files.exists(Paths.get(key)));
+        snapshot.save();
+
+        var seconds = Math.max(1, System.nanoTime() - started) / 1e9;
+        var scannedJars = stats.scannedJars.get();
+        LOG.info(
+                String.format(
+                        "Found %d classes in classpath in %.1fs, scanned %d jars (%.0f jars/s, %.0f classes/s) and"
+                                + " reused %d jars from the snapshot",
+                        classes.size(),
+                        seconds,
+                        scannedJars,
+                        scannedJars / seconds,
+                        stats.scannedClasses.get() / seconds,
+                        stats.cachedJars.get()));
+
+        return classes;
+    }
+
+    /**
+     * Add the classes in `jar` to `classes`, and the jars named by its manifest to `links`. If the jar hasn't changed
+     * since it was last scanned, its classes come from the snapshot.
+     */
+    private static void addJar(
+            ClassNameSnapshot snapshot, Path jar, Set<String> classes, Queue<Path> links, ScanStats stats) {
+        // Jars are identified by their path, size and modified time, so only new or changed jars are scanned
+        long size, modified;
+        try {
+            size = Files.size(jar);
+            modified = Files.getLastModifiedTime(jar).toMillis();
+        } catch (IOException e) {
+            LOG.warning("Couldn't read " + jar + " (" + e.getMessage() + ")");
+            return;
+        }
+        var key = jar.toString();
+        var found = snapshot.find(key, size, modified);
+        ClassNameSnapshot.Entry entry;
+        if (found.isPresent()) {
+            entry = found.get();
+            stats.cachedJars.incrementAndGet();
+        } else {
+            var contents = ClassPath.scanJar(jar.toFile());
+            var classPath = new ArrayList<String>();
+            for (var f : contents.classPath) {
+                classPath.add(f.getPath());
+            }
+            entry = new ClassNameSnapshot.Entry(contents.topLevelClasses, classPath);
+            snapshot.put(key, size, modified, entry);
+            stats.scannedJars.incrementAndGet();
+            stats.scannedClasses.addAndGet(entry.classes.size());
+        }
+        classes.addAll(entry.classes);
+        for (var link : entry.classPath) {
+            links.add(Paths.get(link));
+        }
+    }
+
+    /** Directories are cheap to scan and change all the time, so they are always scanned */
+    private static Set<String> directoryTopLevelClasses(List<Path> directories) {
+        if (directories.isEmpty()) return Set.of();
         Function<Path, URL> toUrl =
                 p -> {
                     try {
@@ -151,7 +300,7 @@ class ScanClassPath {
                         throw new RuntimeException(e);
                     }
                 };
-        var urls = classPath.stream().map(toUrl).toArray(URL[]::new);
+        var urls = directories.stream().map(toUrl).toArray(URL[]::new);
         var classLoader = new URLClassLoader(urls, null);
         ClassPath scanner;
         try {
@@ -163,9 +312,6 @@ class ScanClassPath {
         for (var c : scanner.getTopLevelClasses()) {
             classes.add(c.getName());
         }
-
-        LOG.info(String.format("Found %d classes in classpath", classes.size()));
-
         return classes;
     }
 
@@ -0,0 +1,10 @@
+package org.javacs;
+
+import java.net.URI;
+import java.util.*;
+import org.javacs.lsp.*;
+
+class SemanticColors {
+    URI uri;
+    List<Range> statics = new ArrayList<>(), fields = new ArrayList<>();
+}
@@ -9,8 +9,20 @@ import java.util.logging.Logger;
 import javax.tools.*;
 
 class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    /**
+     * If true, source files that javac looks up on SOURCE_PATH are served with their method bodies erased. Files in the
+     * batch are passed to javac directly, so anything javac looks up must be a dependency, and it only needs the
+     * signatures.
+     */
+    private final boolean eraseMethodBodies;
+
     SourceFileManager() {
+        this(false);
+    }
+
+    SourceFileManager(boolean eraseMethodBodies) {
         super(createDelegateFileManager());
+        this.eraseMethodBodies = eraseMethodBodies;
     }
 
     private static StandardJavaFileManager createDelegateFileManager() {
@@ -34,8 +46,7 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
     }
 
     private JavaFileObject asJavaFileObject(Path file) {
-        // TODO erase method bodies of files that are not open
-        return new SourceFileObject(file);
+        return new SourceFileObject(file, eraseMethodBodies);
     }
 
     @Override
@@ -70,7 +81,7 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
             var simpleClassName = StringSearch.lastName(className);
             for (var f : FileStore.list(packageName)) {
                 if (f.getFileName().toString().equals(simpleClassName + kind.extension)) {
-                    return new SourceFileObject(f);
+                    return asJavaFileObject(f);
                 }
             }
             // Fall through to disk in case we have .jar or .zip files on the source path
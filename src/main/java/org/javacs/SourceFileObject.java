@@ -15,16 +15,27 @@ class SourceFileObject implements JavaFileObject {
     final String contents;
     /** if contents is set, the modified time of contents */
     final Instant modified;
+    /** if true, the text in FileStore is served with method bodies erased, so javac only sees the signatures */
+    final boolean eraseMethodBodies;
 
     SourceFileObject(Path path) {
         this(path, null, Instant.EPOCH);
     }
 
+    SourceFileObject(Path path, boolean eraseMethodBodies) {
+        this(path, null, Instant.EPOCH, eraseMethodBodies);
+    }
+
     SourceFileObject(Path path, String contents, Instant modified) {
+        this(path, contents, modified, false);
+    }
+
+    private SourceFileObject(Path path, String contents, Instant modified, boolean eraseMethodBodies) {
         if (!FileStore.isJavaFile(path)) throw new RuntimeException(path + " is not a java source");
         this.path = path;
         this.contents = contents;
         this.modified = modified;
+        this.eraseMethodBodies = eraseMethodBodies;
     }
 
     @Override
@@ -80,6 +91,10 @@ class SourceFileObject implements JavaFileObject {
             var bytes = contents.getBytes();
             return new ByteArrayInputStream(bytes);
         }
+        if (eraseMethodBodies) {
+            var bytes = Parser.eraseMethodBodies(path).getBytes();
+            return new ByteArrayInputStream(bytes);
+        }
         return FileStore.inputStream(path);
     }
 
@@ -93,6 +108,9 @@ class SourceFileObject implements JavaFileObject {
         if (contents != null) {
             return new StringReader(contents);
         }
+        if (eraseMethodBodies) {
+            return new StringReader(Parser.eraseMethodBodies(path));
+        }
         return FileStore.bufferedReader(path);
     }
 
@@ -101,6 +119,9 @@ class SourceFileObject implements JavaFileObject {
         if (contents != null) {
             return contents;
         }
+        if (eraseMethodBodies) {
+            return Parser.eraseMethodBodies(path);
+        }
         return FileStore.contents(path);
     }
 
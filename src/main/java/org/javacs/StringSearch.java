@@ -4,7 +4,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
 import java.util.logging.Logger;
@@ -202,79 +202,22 @@ class StringSearch {
         }
     }
 
-    private static final ByteBuffer SEARCH_BUFFER = ByteBuffer.allocateDirect(1 * 1024 * 1024);
-
-    // TODO cache the progress made by searching shorter queries
-    static boolean containsWordMatching(Path java, String query) {
-        if (FileStore.activeDocuments().contains(java.toUri())) {
-            var text = FileStore.contents(java);
-            return matchesTitleCase(text, query);
-        }
-        try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            var chars = Charset.forName("UTF-8").decode(SEARCH_BUFFER);
-            return matchesTitleCase(chars, query);
-        } catch (NoSuchFileException e) {
-            LOG.warning(e.getMessage());
-            return false;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     static boolean containsWord(Path java, String query) {
-        var search = new StringSearch(query);
-        if (FileStore.activeDocuments().contains(java.toUri())) {
-            var text = FileStore.contents(java).getBytes();
-            return search.nextWord(text) != -1;
-        }
-        try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.nextWord(SEARCH_BUFFER) != -1;
-        } catch (NoSuchFileException e) {
-            LOG.warning(e.getMessage());
-            return false;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        var text = read(java);
+        if (text == null) return false;
+        return new StringSearch(query).nextWord(text) != -1;
     }
 
     static boolean containsString(Path java, String query) {
-        var search = new StringSearch(query);
-        if (FileStore.activeDocuments().contains(java.toUri())) {
-            var text = FileStore.contents(java).getBytes();
-            return search.next(text) != -1;
-        }
-        try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.next(SEARCH_BUFFER) != -1;
-        } catch (NoSuchFileException e) {
-            LOG.warning(e.getMessage());
-            return false;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        var text = read(java);
+        if (text == null) return false;
+        return new StringSearch(query).next(text) != -1;
     }
 
     /**
      * Check if `candidate` contains all the characters of `find`, in-order, case-insensitive. Matches can be
      * discontinuous if the letters of `find` match the first letters of words in `candidate` For example, fb matches
-     * FooBar, but it doesn't match Foobar (exposed for testing)
+     * FooBar and foo_bar, but it doesn't match Foobar (exposed for testing)
      */
     static boolean matchesTitleCase(CharSequence candidate, String find) {
         Objects.requireNonNull(candidate, "candidate is null");
@@ -284,7 +227,8 @@ class StringSearch {
         while (i < candidate.length()) {
             i = startOfToken(candidate, i);
 
-            for (char f : find.toCharArray()) {
+            for (var j = 0; j < find.length(); j++) {
+                var f = find.charAt(j);
                 // If we have reached the end of candidate without matching all of find, fail
                 if (i >= candidate.length()) return false;
                 // If the next character in candidate matches, advance i
@@ -295,8 +239,7 @@ class StringSearch {
                         char c = candidate.charAt(i);
                         // If the next character is not a word, try again with the next token
                         if (!isWordChar(c)) continue tokenLoop;
-                        // TODO match things like fb ~ foo_bar
-                        boolean isStartOfWord = Character.isUpperCase(c);
+                        boolean isStartOfWord = Character.isUpperCase(c) || (i > 0 && candidate.charAt(i - 1) == '_');
                         boolean isMatch = Character.toLowerCase(f) == Character.toLowerCase(c);
                         if (isStartOfWord && isMatch) {
                             i++;
@@ -328,11 +271,12 @@ class StringSearch {
     static Cache<String, Boolean> cacheContainsClass = new Cache<>();
 
     static boolean containsClass(Path file, String simpleName) {
-        if (cacheContainsClass.needs(file, simpleName)) {
-            cacheContainsClass.load(file, simpleName, containsString(file, "class " + simpleName));
-            // TODO verify this by actually parsing the file
-        }
-        return cacheContainsClass.get(file, simpleName);
+        var cached = cacheContainsClass.find(file, simpleName);
+        if (cached.isPresent()) return cached.get();
+        // TODO verify this by actually parsing the file
+        var found = containsString(file, "class " + simpleName);
+        cacheContainsClass.load(file, simpleName, found);
+        return found;
     }
 
     static boolean containsImport(Path file, String toPackage, String toClass) {
@@ -357,47 +301,28 @@ class StringSearch {
         return false;
     }
 
-    /** Find all already-imported symbols in all .java files in workspace */
-    static ExistingImports existingImports(Collection<Path> allJavaFiles) {
-        var classes = new HashSet<String>();
-        var packages = new HashSet<String>();
-        var importClass = Pattern.compile("^import +(([\\w\\.]+)\\.\\w+);");
-        var importStar = Pattern.compile("^import +([\\w\\.]+)\\.\\*;");
-        var importSimple = Pattern.compile("^import +(\\w+);");
-        for (var path : allJavaFiles) {
-            try (var lines = FileStore.lines(path)) {
-                for (var line = lines.readLine(); line != null; line = lines.readLine()) {
-                    // If we reach a class declaration, stop looking for imports
-                    // TODO This could be a little more specific
-                    if (line.contains("class")) break;
-                    // import foo.bar.Doh;
-                    var matchesClass = importClass.matcher(line);
-                    if (matchesClass.matches()) {
-                        String className = matchesClass.group(1), packageName = matchesClass.group(2);
-                        packages.add(packageName);
-                        classes.add(className);
-                    }
-                    // import foo.bar.*
-                    var matchesStar = importStar.matcher(line);
-                    if (matchesStar.matches()) {
-                        var packageName = matchesStar.group(1);
-                        packages.add(packageName);
-                    }
-                    // import Doh
-                    var matchesSimple = importSimple.matcher(line);
-                    if (matchesSimple.matches()) {
-                        var className = matchesSimple.group(1);
-                        classes.add(className);
-                    }
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+    /**
+     * The bytes of `file`, from the editor if it's open or else mapped from disk, or null if it has been deleted. Each
+     * caller gets its own buffer, so files can be searched from many threads at once, and there is no limit on their
+     * size.
+     */
+    private static ByteBuffer read(Path file) {
+        if (FileStore.activeDocuments().contains(file)) {
+            return ByteBuffer.wrap(FileStore.contents(file).getBytes(StandardCharsets.UTF_8));
+        }
+        try (var channel = FileChannel.open(file)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            LOG.warning(e.getMessage());
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-        return new ExistingImports(classes, packages);
     }
 
-    private static Optional<String> resolveSymbol(String unresolved, ExistingImports imports, Set<String> classPath) {
+    private static Optional<String> resolveSymbol(
+            String unresolved, ExistingImports imports, List<ClassNameIndex> classPath) {
         // Try to disambiguate by looking for exact matches
         // For example, Foo is exactly matched by `import com.bar.Foo`
         // Foo is *not* exactly matched by `import com.bar.*`
@@ -410,15 +335,17 @@ class StringSearch {
             return Optional.of(candidates.iterator().next());
         }
 
+        // Look up every class on the classpath with this name
+        var sameName = new HashSet<String>();
+        for (var index : classPath) {
+            sameName.addAll(index.exact(unresolved));
+        }
+
         // Try to disambiguate by looking at package names
         // Both normal imports like `import com.bar.Foo`, and star-imports like `import com.bar.*`,
         // are used to generate package names
         candidates =
-                classPath
-                        .stream()
-                        .filter(c -> lastName(c).equals(unresolved))
-                        .filter(c -> imports.packages.contains(mostName(c)))
-                        .collect(Collectors.toSet());
+                sameName.stream().filter(c -> imports.packages.contains(mostName(c))).collect(Collectors.toSet());
         if (candidates.size() > 1) {
             LOG.warning(String.format("%s is ambiguous between package-based candidates %s", unresolved, candidates));
             return Optional.empty();
@@ -427,7 +354,7 @@ class StringSearch {
         }
 
         // If there is only one class on the classpath with this name, use it
-        candidates = classPath.stream().filter(c -> lastName(c).equals(unresolved)).collect(Collectors.toSet());
+        candidates = sameName;
 
         if (candidates.size() > 1) {
             LOG.warning(String.format("%s is ambiguous between classpath candidates %s", unresolved, candidates));
@@ -450,7 +377,7 @@ class StringSearch {
     }
 
     static Map<String, String> resolveSymbols(
-            Set<String> unresolvedSymbols, ExistingImports imports, Set<String> classPath) {
+            Set<String> unresolvedSymbols, ExistingImports imports, List<ClassNameIndex> classPath) {
         var result = new HashMap<String, String>();
         for (var s : unresolvedSymbols) {
             resolveSymbol(s, imports, classPath).ifPresent(resolved -> result.put(s, resolved));
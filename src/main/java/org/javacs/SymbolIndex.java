@@ -0,0 +1,260 @@
+package org.javacs;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.javacs.lsp.*;
+
+/**
+ * SymbolIndex remembers the classes, methods and fields declared in every source file in the workspace, so
+ * workspace/symbol can be answered without re-scanning and re-parsing the workspace on every keystroke. Files are
+ * re-indexed on a background thread when FileStore reports a newer modified time, and searches answer from whatever
+ * has been indexed so far. The index is saved between restarts.
+ */
+class SymbolIndex {
+    private static final int MAGIC = 0x4a534958, VERSION = 1;
+
+    /** storage is the file the index is saved to */
+    private final Path storage;
+    /** files[file] is the list of symbols declared in file, as of the time file was last indexed */
+    private final TreeMap<Path, Entry> files = new TreeMap<>();
+    /** dirty is true if files has changed since it was last saved */
+    private boolean dirty;
+    /** updating is the most recent background update, which may still be running */
+    private CompletableFuture<Void> updating = CompletableFuture.completedFuture(null);
+
+    private static class Entry {
+        final Instant modified;
+        final List<Symbol> symbols;
+
+        Entry(Instant modified, List<Symbol> symbols) {
+            this.modified = modified;
+            this.symbols = symbols;
+        }
+    }
+
+    private static class Symbol {
+        final String name, containerName;
+        final int kind, startLine, startCharacter, endLine, endCharacter;
+
+        Symbol(
+                String name,
+                String containerName,
+                int kind,
+                int startLine,
+                int startCharacter,
+                int endLine,
+                int endCharacter) {
+            this.name = name;
+            this.containerName = containerName;
+            this.kind = kind;
+            this.startLine = startLine;
+            this.startCharacter = startCharacter;
+            this.endLine = endLine;
+            this.endCharacter = endCharacter;
+        }
+
+        SymbolInformation asSymbolInformation(Path file) {
+            var i = new SymbolInformation();
+            i.name = name;
+            i.kind = kind;
+            i.containerName = containerName;
+            var start = new Position(startLine, startCharacter);
+            var end = new Position(endLine, endCharacter);
+            i.location = new Location(file.toUri(), new Range(start, end));
+            return i;
+        }
+    }
+
+    SymbolIndex(Path storage) {
+        this.storage = storage;
+        load();
+    }
+
+    /** The default location of the index of the workspace rooted at `workspaceRoot` */
+    static Path defaultStorage(Path workspaceRoot) {
+        return CacheDirectory.forPath("workspaces", workspaceRoot).resolve("symbols");
+    }
+
+    /**
+     * Bring the index up-to-date on a background thread, and save it when it's done. If an update is already running,
+     * return that one instead of starting another.
+     */
+    synchronized CompletableFuture<Void> updateInBackground() {
+        if (!updating.isDone()) return updating;
+        Executor newThread =
+                task -> {
+                    var thread = new Thread(task, "index-symbols");
+                    thread.setDaemon(true);
+                    thread.start();
+                };
+        Runnable update =
+                () -> {
+                    try {
+                        update();
+                        save();
+                    } catch (RuntimeException e) {
+                        LOG.log(Level.SEVERE, "Failed to index workspace symbols", e);
+                    }
+                };
+        updating = CompletableFuture.runAsync(update, newThread);
+        return updating;
+    }
+
+    /**
+     * The `limit` symbols whose names best match `query`, best first. This doesn't wait for files to be indexed; it
+     * starts a background update and searches the files that have been indexed so far.
+     */
+    synchronized List<SymbolInformation> search(String query, int limit) {
+        LOG.info(String.format("Searching for `%s`...", query));
+        updateInBackground();
+        var top = new FuzzyMatch.Top<Map.Entry<Path, Symbol>>(limit);
+        var matched = 0;
+        for (var file : files.keySet()) {
+            for (var s : files.get(file).symbols) {
+                var score = FuzzyMatch.score(s.name, query);
+                if (score == FuzzyMatch.NO_MATCH) continue;
+                top.add(Map.entry(file, s), score);
+                matched++;
+            }
+        }
+        var result = new ArrayList<SymbolInformation>();
+        for (var best : top.best()) {
+            result.add(best.getValue().asSymbolInformation(best.getKey()));
+        }
+        LOG.info(String.format("Kept the best %d of %d matches in %d files", result.size(), matched, files.size()));
+        return result;
+    }
+
+    /**
+     * Re-index every file that has been modified since it was last indexed, and forget files that were deleted. The
+     * lock is only held to read and update `files`, not while parsing, so searches can run while this does.
+     */
+    void update() {
+        var all = FileStore.all();
+        var stale = new HashMap<Path, Instant>();
+        synchronized (this) {
+            if (files.keySet().retainAll(all)) {
+                dirty = true;
+            }
+            for (var file : all) {
+                var modified = FileStore.modified(file);
+                var existing = files.get(file);
+                if (existing != null && existing.modified.equals(modified)) continue;
+                stale.put(file, modified);
+            }
+        }
+        // Parsing is independent for each file, so re-index stale files on all cores
+        var cancel = CancelToken.current();
+        cancel.check();
+        stale.keySet()
+                .parallelStream()
+                .forEach(
+                        file -> {
+                            cancel.check();
+                            var symbols = index(file);
+                            synchronized (this) {
+                                files.put(file, new Entry(stale.get(file), symbols));
+                                dirty = true;
+                            }
+                        });
+        if (!stale.isEmpty()) {
+            LOG.info(String.format("...re-indexed %d files", stale.size()));
+        }
+    }
+
+    private List<Symbol> index(Path file) {
+        // Don't go through the parse cache, which would evict the parses of the files the user is editing
+        var parse = Parser.parseJavaFileObject(new SourceFileObject(file));
+        var symbols = new ArrayList<Symbol>();
+        for (var i : parse.documentSymbols()) {
+            var r = i.location.range;
+            var s =
+                    new Symbol(
+                            i.name,
+                            Objects.toString(i.containerName, ""),
+                            i.kind,
+                            r.start.line,
+                            r.start.character,
+                            r.end.line,
+                            r.end.character);
+            symbols.add(s);
+        }
+        return symbols;
+    }
+
+    /** Save the index to disk, if it has changed since it was last saved */
+    synchronized void save() {
+        if (!dirty) return;
+        try {
+            CacheDirectory.writeAtomically(
+                    storage,
+                    out -> {
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        out.writeInt(files.size());
+                        for (var file : files.keySet()) {
+                            var entry = files.get(file);
+                            out.writeUTF(file.toString());
+                            out.writeLong(entry.modified.getEpochSecond());
+                            out.writeInt(entry.modified.getNano());
+                            out.writeInt(entry.symbols.size());
+                            for (var s : entry.symbols) {
+                                out.writeUTF(s.name);
+                                out.writeUTF(s.containerName);
+                                out.writeInt(s.kind);
+                                out.writeInt(s.startLine);
+                                out.writeInt(s.startCharacter);
+                                out.writeInt(s.endLine);
+                                out.writeInt(s.endCharacter);
+                            }
+                        }
+                    });
+            dirty = false;
+            LOG.info(String.format("Saved symbols of %d files to %s", files.size(), storage));
+        } catch (IOException e) {
+            LOG.warning(String.format("Failed to save symbol index to %s: %s", storage, e.getMessage()));
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(storage)) return;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(storage)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOG.warning(String.format("Ignoring symbol index %s from an incompatible version", storage));
+                return;
+            }
+            var countFiles = in.readInt();
+            for (var i = 0; i < countFiles; i++) {
+                var file = Paths.get(in.readUTF());
+                var modified = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                var countSymbols = in.readInt();
+                var symbols = new ArrayList<Symbol>(countSymbols);
+                for (var j = 0; j < countSymbols; j++) {
+                    var s =
+                            new Symbol(
+                                    in.readUTF(),
+                                    in.readUTF(),
+                                    in.readInt(),
+                                    in.readInt(),
+                                    in.readInt(),
+                                    in.readInt(),
+                                    in.readInt());
+                    symbols.add(s);
+                }
+                files.put(file, new Entry(modified, symbols));
+            }
+            LOG.info(String.format("Loaded symbols of %d files from %s", files.size(), storage));
+        } catch (IOException e) {
+            LOG.warning(String.format("Failed to load symbol index from %s: %s", storage, e.getMessage()));
+            files.clear();
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,267 @@
+package org.javacs;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import org.javacs.lsp.CancelToken;
+
+/**
+ * WordIndex maps each identifier in the workspace to the set of files that contain it, so finding potential references
+ * is a lookup instead of a scan of every file. It also records the package and imports of each file, so we can check
+ * whether a file can see a class without reading it again.
+ *
+ * <p>Words and files are numbered, and postings are stored as sorted int[] arrays. The index is built in one pass the
+ * first time it is queried; after that, FileStore tells us which files have changed, and we re-index them the next
+ * time we are queried.
+ */
+class WordIndex {
+    /** words[id] is the word with id, wordIds[word] is the id of word */
+    private static final List<String> words = new ArrayList<>();
+
+    private static final Map<String, Integer> wordIds = new HashMap<>();
+
+    /** postings[wordId] is the sorted ids of the files that contain word, followed by unused space */
+    private static int[][] postings = new int[1024][];
+
+    private static int[] postingsSize = new int[1024];
+
+    /** files[id] is the file with id, or null if the file has been removed from the index */
+    private static final List<Path> files = new ArrayList<>();
+
+    private static final Map<Path, Integer> fileIds = new HashMap<>();
+
+    /** contains[fileId] is the sorted ids of the words in file */
+    private static int[][] contains = new int[1024][];
+
+    /** dirty is the set of files that have changed since they were last indexed */
+    private static final Set<Path> dirty = new HashSet<>();
+
+    /** Note that `file` has been created, changed or deleted, so it will be re-indexed before the next query */
+    static synchronized void invalidate(Path file) {
+        dirty.add(file);
+    }
+
+    /** All files in `FileStore.all()` that contain `word` */
+    static synchronized Set<Path> filesContaining(String word) {
+        refresh();
+        return lookup(word);
+    }
+
+    /**
+     * All files that can refer to `toClass` by its simple name, because they are in `toPackage` or they import
+     * `toPackage.toClass`, `toPackage.*` or static members of `toPackage.toClass`
+     */
+    static synchronized Set<Path> filesImporting(String toPackage, String toClass) {
+        refresh();
+        var result = new HashSet<Path>();
+        result.addAll(lookup(PACKAGE + toPackage));
+        result.addAll(lookup(IMPORT + toPackage + "." + toClass));
+        result.addAll(lookup(IMPORT + toPackage + ".*"));
+        return result;
+    }
+
+    /**
+     * Files, other than `file`, that depend on `file` because they mention the class it declares and can see it by its
+     * simple name
+     */
+    static synchronized Set<Path> dependents(Path file) {
+        refresh();
+        var fileName = file.getFileName().toString();
+        var className = fileName.substring(0, fileName.length() - ".java".length());
+        var packageName = FileStore.packageName(file);
+        var visible = new HashSet<Path>();
+        visible.addAll(lookup(PACKAGE + packageName));
+        visible.addAll(lookup(IMPORT + packageName + "." + className));
+        visible.addAll(lookup(IMPORT + packageName + ".*"));
+        var result = lookup(className);
+        result.retainAll(visible);
+        result.remove(file);
+        return result;
+    }
+
+    /** The classes and packages imported by any file, which fix-imports uses to guess the imports a file is missing */
+    static synchronized ExistingImports existingImports() {
+        refresh();
+        var classes = new HashSet<String>();
+        var packages = new HashSet<String>();
+        for (var id = 0; id < words.size(); id++) {
+            var word = words.get(id);
+            if (!word.startsWith(IMPORT) || postingsSize[id] == 0) continue;
+            var name = word.substring(IMPORT.length());
+            if (name.endsWith(".*")) {
+                packages.add(StringSearch.mostName(name));
+            } else {
+                classes.add(name);
+                var packageName = StringSearch.mostName(name);
+                if (!packageName.isEmpty()) packages.add(packageName);
+            }
+        }
+        return new ExistingImports(classes, packages);
+    }
+
+    private static Set<Path> lookup(String word) {
+        var id = wordIds.get(word);
+        if (id == null) return Set.of();
+        var found = new HashSet<Path>();
+        var list = postings[id];
+        for (var i = 0; i < postingsSize[id]; i++) {
+            found.add(files.get(list[i]));
+        }
+        return found;
+    }
+
+    /** Bring the index up-to-date with FileStore */
+    private static void refresh() {
+        var all = FileStore.all();
+        var indexed = 0;
+        // Remove files that are no longer in FileStore
+        for (var id = 0; id < files.size(); id++) {
+            var file = files.get(id);
+            if (file != null && !all.contains(file)) {
+                remove(id);
+            }
+        }
+        // Index files that are new or have changed, finding their words on all cores
+        var stale = new ArrayList<Path>();
+        for (var file : all) {
+            if (!fileIds.containsKey(file) || dirty.contains(file)) {
+                stale.add(file);
+            }
+        }
+        var cancel = CancelToken.current();
+        cancel.check();
+        var found = new ConcurrentHashMap<Path, Set<String>>();
+        stale.parallelStream()
+                .forEach(
+                        file -> {
+                            cancel.check();
+                            found.put(file, words(FileStore.contents(file)));
+                        });
+        for (var file : stale) {
+            index(file, found.get(file));
+            indexed++;
+        }
+        dirty.clear();
+        if (indexed > 0) {
+            LOG.info(String.format("...indexed words in %d files", indexed));
+        }
+    }
+
+    private static void index(Path file, Set<String> newWords) {
+        var fileId = fileIds.get(file);
+        if (fileId != null) {
+            unlink(fileId);
+        } else {
+            fileId = files.size();
+            files.add(file);
+            fileIds.put(file, fileId);
+            if (fileId >= contains.length) {
+                contains = Arrays.copyOf(contains, contains.length * 2);
+            }
+        }
+        var ids = new int[newWords.size()];
+        var i = 0;
+        for (var w : newWords) {
+            ids[i++] = wordId(w);
+        }
+        Arrays.sort(ids);
+        contains[fileId] = ids;
+        for (var wordId : ids) {
+            addPosting(wordId, fileId);
+        }
+    }
+
+    private static void remove(int fileId) {
+        unlink(fileId);
+        fileIds.remove(files.get(fileId));
+        files.set(fileId, null);
+        contains[fileId] = null;
+    }
+
+    /** Remove fileId from the postings of all the words it used to contain */
+    private static void unlink(int fileId) {
+        for (var wordId : contains[fileId]) {
+            var list = postings[wordId];
+            var size = postingsSize[wordId];
+            var at = Arrays.binarySearch(list, 0, size, fileId);
+            if (at < 0) continue;
+            System.arraycopy(list, at + 1, list, at, size - at - 1);
+            postingsSize[wordId] = size - 1;
+        }
+    }
+
+    private static void addPosting(int wordId, int fileId) {
+        var list = postings[wordId];
+        var size = postingsSize[wordId];
+        var at = Arrays.binarySearch(list, 0, size, fileId);
+        if (at >= 0) return;
+        at = -at - 1;
+        if (size == list.length) {
+            list = Arrays.copyOf(list, Math.max(4, size * 2));
+            postings[wordId] = list;
+        }
+        System.arraycopy(list, at, list, at + 1, size - at);
+        list[at] = fileId;
+        postingsSize[wordId] = size + 1;
+    }
+
+    private static int wordId(String word) {
+        var id = wordIds.get(word);
+        if (id != null) return id;
+        id = words.size();
+        words.add(word);
+        wordIds.put(word, id);
+        if (id >= postings.length) {
+            postings = Arrays.copyOf(postings, postings.length * 2);
+            postingsSize = Arrays.copyOf(postingsSize, postingsSize.length * 2);
+        }
+        postings[id] = new int[4];
+        return id;
+    }
+
+    private static final String PACKAGE = "package ", IMPORT = "import ";
+    private static final Pattern PACKAGE_LINE = Pattern.compile("^package +([\\w\\.]+);");
+    private static final Pattern IMPORT_LINE = Pattern.compile("^import +(static +)?([\\w\\.]+(\\.\\*)?);");
+    private static final Pattern START_OF_CLASS = Pattern.compile("^[\\w ]*(class|interface|enum|@interface) +\\w+");
+
+    /** All the identifiers in `contents`, plus special keys for the package declaration and imports */
+    static Set<String> words(String contents) {
+        var found = new HashSet<String>();
+        // Find identifiers
+        var length = contents.length();
+        var i = 0;
+        while (i < length) {
+            if (!Character.isJavaIdentifierPart(contents.charAt(i))) {
+                i++;
+                continue;
+            }
+            var start = i;
+            while (i < length && Character.isJavaIdentifierPart(contents.charAt(i))) i++;
+            found.add(contents.substring(start, i));
+        }
+        // Find package and imports
+        var lines = contents.split("\n");
+        for (var line : lines) {
+            if (START_OF_CLASS.matcher(line).find()) break;
+            var pkg = PACKAGE_LINE.matcher(line);
+            if (pkg.find()) {
+                found.add(PACKAGE + pkg.group(1));
+                continue;
+            }
+            var imp = IMPORT_LINE.matcher(line);
+            if (imp.find()) {
+                var name = imp.group(2);
+                // For `import static a.B.c` and `import static a.B.*`, what we care about is a.B
+                if (imp.group(1) != null) {
+                    name = StringSearch.mostName(name);
+                }
+                found.add(IMPORT + name);
+            }
+        }
+        return found;
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
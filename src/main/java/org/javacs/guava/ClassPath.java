@@ -92,6 +92,49 @@ public final class ClassPath {
         return new ClassPath(scanner.getResources());
     }
 
+    /**
+     * The top-level classes in a single jar file, and the files named by its {@code Class-Path} manifest attribute.
+     * Unlike {@link #from}, scanning a jar this way doesn't follow the {@code Class-Path} attribute, so the result
+     * depends only on the jar itself.
+     */
+    public static final class JarContents {
+        public final List<String> topLevelClasses;
+        public final List<File> classPath;
+
+        JarContents(List<String> topLevelClasses, List<File> classPath) {
+            this.topLevelClasses = topLevelClasses;
+            this.classPath = classPath;
+        }
+    }
+
+    /**
+     * Scans a single jar file, or returns empty contents if {@code file} can't be read as a jar. Only the central
+     * directory and the manifest are read, so the classes themselves are never inflated, and signatures aren't
+     * verified. Scanning different jars is independent, so this is safe to call from many threads at once.
+     */
+    public static JarContents scanJar(File file) {
+        try (JarFile jarFile = new JarFile(file, false)) {
+            var classes = new ArrayList<String>();
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || !name.endsWith(CLASS_FILE_NAME_EXTENSION)) {
+                    continue;
+                }
+                String className = getClassName(name);
+                if (className.indexOf('$') == -1) {
+                    classes.add(className);
+                }
+            }
+            var classPath = new ArrayList<>(Scanner.getClassPathFromManifest(file, jarFile.getManifest()));
+            return new JarContents(classes, classPath);
+        } catch (IOException e) {
+            // Not a jar file
+            return new JarContents(List.of(), List.of());
+        }
+    }
+
     /**
      * Returns all resources loadable from the current class path, including the class files of all loadable classes but
      * excluding the "META-INF/MANIFEST.MF" file.
@@ -0,0 +1,61 @@
+package org.javacs.lsp;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * CancelToken tells a long-running request that the client has cancelled it. LSP installs a token on the thread that
+ * runs each request, and marks it when $/cancelRequest arrives; the request notices by calling checkCancelled()
+ * periodically, and aborts by throwing CancellationException.
+ */
+public class CancelToken {
+    private volatile boolean cancelled;
+
+    private static final ThreadLocal<CancelToken> current = new ThreadLocal<>();
+
+    /** A token that is never cancelled, for work that isn't running on behalf of a request */
+    private static final CancelToken NONE = new CancelToken();
+
+    /** Throw CancellationException if the request running on this thread has been cancelled */
+    public static void checkCancelled() {
+        current().check();
+    }
+
+    /**
+     * The token of the request running on this thread. Work that the request hands off to other threads, like a
+     * parallel stream, should capture it and call check(), since those threads don't have the request's token.
+     */
+    public static CancelToken current() {
+        var token = current.get();
+        return token != null ? token : NONE;
+    }
+
+    /** Throw CancellationException if this token's request has been cancelled */
+    public void check() {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    /** Is `e`, or the exception that caused it, a CancellationException? */
+    public static boolean isCancellation(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CancellationException) return true;
+        }
+        return false;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    /** Run `task` on this thread, with `token` as the current token */
+    static void run(CancelToken token, Runnable task) {
+        var previous = current.get();
+        current.set(token);
+        try {
+            task.run();
+        } finally {
+            current.set(previous);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.javacs.lsp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+/**
+ * Framer splits the stream from the client into JSON-RPC messages. It reads the stream in large blocks into a reusable
+ * buffer, reads exactly Content-Length bytes of each message body, and decodes each body as UTF-8 once.
+ */
+class Framer {
+    private final ReadableByteChannel client;
+    /** buffer holds bytes that have been read from client but not yet framed, between position and limit */
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).flip();
+
+    Framer(InputStream client) {
+        this.client = Channels.newChannel(client);
+    }
+
+    /** The body of the next message, or throw EndOfStream if client has been closed */
+    String next() {
+        var contentLength = -1;
+        while (true) {
+            var line = readHeader();
+            // If header contains length, save it
+            if (line.startsWith(CONTENT_LENGTH)) {
+                contentLength = Integer.parseInt(line.substring(CONTENT_LENGTH.length()).trim());
+            }
+            // If header is empty, next line is the start of the message
+            else if (line.isEmpty() && contentLength != -1) {
+                return readBody(contentLength);
+            }
+        }
+    }
+
+    private static final String CONTENT_LENGTH = "Content-Length: ";
+
+    /** Read a header line, without the trailing \r\n. Headers are ASCII. */
+    private String readHeader() {
+        var searchFrom = buffer.position();
+        while (true) {
+            for (var i = searchFrom; i < buffer.limit(); i++) {
+                if (buffer.get(i) != '\n') continue;
+                var start = buffer.position();
+                var end = i > start && buffer.get(i - 1) == '\r' ? i - 1 : i;
+                var line = new String(buffer.array(), start, end - start, StandardCharsets.US_ASCII);
+                buffer.position(i + 1);
+                return line;
+            }
+            var scanned = buffer.remaining();
+            fill();
+            searchFrom = buffer.position() + scanned;
+        }
+    }
+
+    private String readBody(int byteLength) {
+        // Eat whitespace
+        // Have observed problems with extra \r\n sequences from VSCode
+        while (true) {
+            if (!buffer.hasRemaining()) fill();
+            if (!Character.isWhitespace(buffer.get(buffer.position()))) break;
+            buffer.get();
+        }
+        while (buffer.remaining() < byteLength) {
+            fill(byteLength);
+        }
+        var start = buffer.position();
+        var body = new String(buffer.array(), start, byteLength, StandardCharsets.UTF_8);
+        buffer.position(start + byteLength);
+        return body;
+    }
+
+    private void fill() {
+        fill(buffer.capacity());
+    }
+
+    /** Read at least one more byte from client, growing buffer if needed so it can hold `atLeast` bytes */
+    private void fill(int atLeast) {
+        buffer.compact();
+        if (!buffer.hasRemaining() || buffer.capacity() < atLeast) {
+            var bigger = ByteBuffer.allocate(Math.max(atLeast, buffer.capacity() * 2));
+            buffer.flip();
+            bigger.put(buffer);
+            buffer = bigger;
+        }
+        try {
+            int read;
+            do {
+                read = client.read(buffer);
+            } while (read == 0);
+            if (read == -1) {
+                LOG.warning("Stream from client has been closed, throwing kill exception...");
+                throw new LSP.EndOfStream();
+            }
+        } catch (IOException e) {
+            // A broken pipe means the client has gone away, just like a closed stream
+            LOG.warning("Failed to read from client, throwing kill exception: " + e.getMessage());
+            throw new LSP.EndOfStream();
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
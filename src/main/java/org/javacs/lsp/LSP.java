@@ -2,12 +2,22 @@ package org.javacs.lsp;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
 import java.io.*;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -15,90 +25,69 @@ import java.util.logging.Logger;
 public class LSP {
     private static final Gson gson = new Gson();
 
-    private static String readHeader(InputStream client) {
-        var line = new StringBuilder();
-        for (var next = read(client); true; next = read(client)) {
-            if (next == '\r') {
-                var last = read(client);
-                assert last == '\n';
-                break;
-            }
-            line.append(next);
-        }
-        return line.toString();
-    }
+    static class EndOfStream extends RuntimeException {}
 
-    private static int parseHeader(String header) {
-        var contentLength = "Content-Length: ";
-        if (header.startsWith(contentLength)) {
-            var tail = header.substring(contentLength.length());
-            var length = Integer.parseInt(tail);
-            return length;
-        }
-        return -1;
+    static Message parseMessage(String token) {
+        return gson.fromJson(token, Message.class);
     }
 
-    static class EndOfStream extends RuntimeException {}
+    /**
+     * Each thread that writes to the client serializes messages into its own buffer, which is reused for every message
+     * the thread sends
+     */
+    private static final ThreadLocal<ByteArrayOutputStream> WRITE_BUFFER =
+            ThreadLocal.withInitial(() -> new ByteArrayOutputStream(64 * 1024));
+
+    /** Don't hold on to buffers that grew to send an unusually large message */
+    private static final int MAX_POOLED_BUFFER = 1024 * 1024;
+
+    private interface WriteBody {
+        void write(JsonWriter json) throws IOException;
+    }
 
-    private static char read(InputStream client) {
+    /** Write a JSON-RPC 2.0 message to client, serializing the fields after "jsonrpc" using `body` */
+    private static void writeClient(OutputStream client, WriteBody body) {
+        var buffer = WRITE_BUFFER.get();
+        buffer.reset();
         try {
-            var c = client.read();
-            if (c == -1) {
-                LOG.warning("Stream from client has been closed, throwing kill exception...");
-                throw new EndOfStream();
+            var json = gson.newJsonWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+            // The envelope always has result or error, even if it's null
+            json.setSerializeNulls(true);
+            json.beginObject();
+            json.name("jsonrpc").value("2.0");
+            body.write(json);
+            json.endObject();
+            json.flush();
+            var header = String.format("Content-Length: %d\r\n\r\n", buffer.size());
+            var headerBytes = header.getBytes(StandardCharsets.US_ASCII);
+            // Responses may be written by several worker threads at once, so don't let their bytes interleave
+            synchronized (client) {
+                client.write(headerBytes);
+                buffer.writeTo(client);
             }
-            return (char) c;
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            if (buffer.size() > MAX_POOLED_BUFFER) {
+                WRITE_BUFFER.remove();
+            }
         }
     }
 
-    private static String readLength(InputStream client, int byteLength) {
-        // Eat whitespace
-        // Have observed problems with extra \r\n sequences from VSCode
-        var next = read(client);
-        while (Character.isWhitespace(next)) {
-            next = read(client);
-        }
-        // Append next
-        var result = new StringBuilder();
-        var i = 0;
-        while (true) {
-            result.append(next);
-            i++;
-            if (i == byteLength) break;
-            next = read(client);
-        }
-        return result.toString();
-    }
-
-    static String nextToken(InputStream client) {
-        var contentLength = -1;
-        while (true) {
-            var line = readHeader(client);
-            // If header is empty, next line is the start of the message
-            if (line.isEmpty()) return readLength(client, contentLength);
-            // If header contains length, save it
-            var maybeLength = parseHeader(line);
-            if (maybeLength != -1) contentLength = maybeLength;
+    /** Serialize `value` into `json` using the same settings as toJson(_) */
+    private static void writeValue(JsonWriter json, Object value) {
+        if (value instanceof Optional) {
+            var option = (Optional) value;
+            value = option.orElse(null);
         }
-    }
-
-    static Message parseMessage(String token) {
-        return gson.fromJson(token, Message.class);
-    }
-
-    private static final Charset UTF_8 = Charset.forName("UTF-8");
-
-    private static void writeClient(OutputStream client, String messageText) {
-        var messageBytes = messageText.getBytes(UTF_8);
-        var headerText = String.format("Content-Length: %d\r\n\r\n", messageBytes.length);
-        var headerBytes = headerText.getBytes(UTF_8);
-        try {
-            client.write(headerBytes);
-            client.write(messageBytes);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        if (value == null) {
+            try {
+                json.nullValue();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            gson.toJson(value, value.getClass(), json);
         }
     }
 
@@ -110,29 +99,33 @@ public class LSP {
         if (params instanceof ResponseError) {
             throw new RuntimeException("Errors should be sent using LSP.error(...)");
         }
-        if (params instanceof Optional) {
-            var option = (Optional) params;
-            params = option.orElse(null);
-        }
-        var jsonText = toJson(params);
-        var messageText = String.format("{\"jsonrpc\":\"2.0\",\"id\":%d,\"result\":%s}", requestId, jsonText);
-        writeClient(client, messageText);
+        writeClient(
+                client,
+                json -> {
+                    json.name("id").value(requestId);
+                    json.name("result");
+                    writeValue(json, params);
+                });
     }
 
     static void error(OutputStream client, int requestId, ResponseError error) {
-        var jsonText = toJson(error);
-        var messageText = String.format("{\"jsonrpc\":\"2.0\",\"id\":%d,\"error\":%s}", requestId, jsonText);
-        writeClient(client, messageText);
+        writeClient(
+                client,
+                json -> {
+                    json.name("id").value(requestId);
+                    json.name("error");
+                    writeValue(json, error);
+                });
     }
 
     private static void notifyClient(OutputStream client, String method, Object params) {
-        if (params instanceof Optional) {
-            var option = (Optional) params;
-            params = option.orElse(null);
-        }
-        var jsonText = toJson(params);
-        var messageText = String.format("{\"jsonrpc\":\"2.0\",\"method\":\"%s\",\"params\":%s}", method, jsonText);
-        writeClient(client, messageText);
+        writeClient(
+                client,
+                json -> {
+                    json.name("method").value(method);
+                    json.name("params");
+                    writeValue(json, params);
+                });
     }
 
     private static class RealClient implements LanguageClient {
@@ -173,15 +166,32 @@ public class LSP {
         var server = serverFactory.apply(new RealClient(send));
         var pending = new ArrayBlockingQueue<Message>(10);
         var endOfStream = new Message();
+        // inFlight[id] is the cancel token of a request that has been received but not yet answered
+        var inFlight = new ConcurrentHashMap<Integer, CancelToken>();
+        // asyncWork is the cancel token of doAsyncWork(), while it is running
+        var asyncWork = new AtomicReference<CancelToken>();
 
         // Read messages and process cancellations on a separate thread
         class MessageReader implements Runnable {
             void peek(Message message) {
+                // Any new message means the results of async work may be out-of-date, and we want to respond quickly
+                var background = asyncWork.get();
+                if (background != null) background.cancel();
                 if (message.method.equals("$/cancelRequest")) {
                     var params = gson.fromJson(message.params, CancelParams.class);
                     var removed = pending.removeIf(r -> r.id != null && r.id.equals(params.id));
-                    if (removed) LOG.info(String.format("Cancelled request %d, which had not yet started", params.id));
-                    else LOG.info(String.format("Cannot cancel request %d because it has already started", params.id));
+                    var running = inFlight.get(params.id);
+                    if (removed) {
+                        LOG.info(String.format("Cancelled request %d, which had not yet started", params.id));
+                        inFlight.remove(params.id);
+                    } else if (running != null) {
+                        LOG.info(String.format("Cancelling request %d, which is in progress", params.id));
+                        running.cancel();
+                    } else {
+                        LOG.info(String.format("Cannot cancel request %d because it has already finished", params.id));
+                    }
+                } else if (message.id != null) {
+                    inFlight.put(message.id, new CancelToken());
                 }
             }
 
@@ -200,9 +210,10 @@ public class LSP {
             public void run() {
                 LOG.info("Placing incoming messages on queue...");
 
+                var framer = new Framer(receive);
                 while (true) {
                     try {
-                        var token = nextToken(receive);
+                        var token = framer.next();
                         var message = parseMessage(token);
                         peek(message);
                         pending.put(message);
@@ -218,6 +229,10 @@ public class LSP {
         reader.setDaemon(true);
         reader.start();
 
+        // Read-only requests run concurrently on workers, everything else runs on main thread
+        var workers = Executors.newFixedThreadPool(WORKER_THREADS, LSP::workerThread);
+        var running = new ArrayList<Future<?>>();
+
         // Process messages on main thread
         LOG.info("Reading messages from queue...");
         var hasAsyncWork = false;
@@ -238,218 +253,303 @@ public class LSP {
             }
             // If poll(_) failed, loop again
             if (r == null) {
-                if (hasAsyncWork) {
-                    server.doAsyncWork();
-                    hasAsyncWork = false;
+                // Only do async work when the server is idle, so we don't hold up new requests
+                running.removeIf(Future::isDone);
+                if ((hasAsyncWork || server.hasAsyncWork()) && running.isEmpty()) {
+                    var token = new CancelToken();
+                    asyncWork.set(token);
+                    try {
+                        CancelToken.run(token, server::doAsyncWork);
+                        hasAsyncWork = false;
+                    } catch (Exception e) {
+                        if (CancelToken.isCancellation(e)) LOG.info("Async work was interrupted by a new message");
+                        else LOG.log(Level.SEVERE, e.getMessage(), e);
+                    } finally {
+                        asyncWork.set(null);
+                    }
                 }
                 continue;
             }
+            if (r.method.equals("exit")) {
+                LOG.warning("Got exit message, exiting...");
+                break processMessages;
+            }
             // Otherwise, process the new message
             hasAsyncWork = true;
+            if (READ_ONLY.contains(r.method)) {
+                running.removeIf(Future::isDone);
+                var request = r;
+                running.add(workers.submit(() -> dispatch(server, send, request, inFlight)));
+            } else {
+                // Messages that modify the state of the server wait for all earlier requests to finish,
+                // and requests that arrive later don't start until they're done
+                awaitAll(running);
+                dispatch(server, send, r, inFlight);
+            }
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * Requests that don't change the state of the server. These run concurrently with each other on worker threads;
+     * all other messages are barriers, which run alone and in the order they were received.
+     */
+    private static final Set<String> READ_ONLY =
+            Set.of(
+                    "workspace/symbol",
+                    "textDocument/documentLink",
+                    "textDocument/completion",
+                    "completionItem/resolve",
+                    "textDocument/hover",
+                    "textDocument/signatureHelp",
+                    "textDocument/definition",
+                    "textDocument/references",
+                    "textDocument/documentSymbol",
+                    "textDocument/codeAction",
+                    "textDocument/codeLens",
+                    "codeLens/resolve",
+                    "textDocument/prepareRename",
+                    "textDocument/rename",
+                    "textDocument/formatting",
+                    "textDocument/foldingRange");
+
+    private static final int WORKER_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static Thread workerThread(Runnable task) {
+        var thread = new Thread(task, "worker");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void awaitAll(List<Future<?>> running) {
+        for (var task : running) {
             try {
-                switch (r.method) {
-                    case "initialize":
-                        {
-                            var params = gson.fromJson(r.params, InitializeParams.class);
-                            var response = server.initialize(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "initialized":
-                        {
-                            server.initialized();
-                            break;
-                        }
-                    case "shutdown":
-                        {
-                            LOG.warning("Got shutdown message");
-                            respond(send, r.id, null);
-                            break;
-                        }
-                    case "exit":
-                        {
-                            LOG.warning("Got exit message, exiting...");
-                            break processMessages;
-                        }
-                    case "workspace/didChangeWorkspaceFolders":
-                        {
-                            var params = gson.fromJson(r.params, DidChangeWorkspaceFoldersParams.class);
-                            server.didChangeWorkspaceFolders(params);
-                            break;
-                        }
-                    case "workspace/didChangeConfiguration":
-                        {
-                            var params = gson.fromJson(r.params, DidChangeConfigurationParams.class);
-                            server.didChangeConfiguration(params);
-                            break;
-                        }
-                    case "workspace/didChangeWatchedFiles":
-                        {
-                            var params = gson.fromJson(r.params, DidChangeWatchedFilesParams.class);
-                            server.didChangeWatchedFiles(params);
-                            break;
-                        }
-                    case "workspace/symbol":
-                        {
-                            var params = gson.fromJson(r.params, WorkspaceSymbolParams.class);
-                            var response = server.workspaceSymbols(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/documentLink":
-                        {
-                            var params = gson.fromJson(r.params, DocumentLinkParams.class);
-                            var response = server.documentLink(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/didOpen":
-                        {
-                            var params = gson.fromJson(r.params, DidOpenTextDocumentParams.class);
-                            server.didOpenTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/didChange":
-                        {
-                            var params = gson.fromJson(r.params, DidChangeTextDocumentParams.class);
-                            server.didChangeTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/willSave":
-                        {
-                            var params = gson.fromJson(r.params, WillSaveTextDocumentParams.class);
-                            server.willSaveTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/willSaveWaitUntil":
-                        {
-                            var params = gson.fromJson(r.params, WillSaveTextDocumentParams.class);
-                            var response = server.willSaveWaitUntilTextDocument(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/didSave":
-                        {
-                            var params = gson.fromJson(r.params, DidSaveTextDocumentParams.class);
-                            server.didSaveTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/didClose":
-                        {
-                            var params = gson.fromJson(r.params, DidCloseTextDocumentParams.class);
-                            server.didCloseTextDocument(params);
-                            break;
-                        }
-                    case "textDocument/completion":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.completion(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "completionItem/resolve":
-                        {
-                            var params = gson.fromJson(r.params, CompletionItem.class);
-                            var response = server.resolveCompletionItem(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/hover":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.hover(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/signatureHelp":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.signatureHelp(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/definition":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.gotoDefinition(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/references":
-                        {
-                            var params = gson.fromJson(r.params, ReferenceParams.class);
-                            var response = server.findReferences(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/documentSymbol":
-                        {
-                            var params = gson.fromJson(r.params, DocumentSymbolParams.class);
-                            var response = server.documentSymbol(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/codeAction":
-                        {
-                            var params = gson.fromJson(r.params, CodeActionParams.class);
-                            var response = server.codeAction(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/codeLens":
-                        {
-                            var params = gson.fromJson(r.params, CodeLensParams.class);
-                            var response = server.codeLens(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "codeLens/resolve":
-                        {
-                            var params = gson.fromJson(r.params, CodeLens.class);
-                            var response = server.resolveCodeLens(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/prepareRename":
-                        {
-                            var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
-                            var response = server.prepareRename(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/rename":
-                        {
-                            var params = gson.fromJson(r.params, RenameParams.class);
-                            var response = server.rename(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/formatting":
-                        {
-                            var params = gson.fromJson(r.params, DocumentFormattingParams.class);
-                            var response = server.formatting(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "textDocument/foldingRange":
-                        {
-                            var params = gson.fromJson(r.params, FoldingRangeParams.class);
-                            var response = server.foldingRange(params);
-                            respond(send, r.id, response);
-                            break;
-                        }
-                    case "$/cancelRequest":
-                        // Already handled in peek(message)
-                        break;
-                    default:
-                        LOG.warning(String.format("Don't know what to do with method `%s`", r.method));
-                }
-            } catch (Exception e) {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
                 LOG.log(Level.SEVERE, e.getMessage(), e);
+            }
+        }
+        running.clear();
+    }
+
+    private static void dispatch(
+            LanguageServer server, OutputStream send, Message r, Map<Integer, CancelToken> inFlight) {
+        var token = r.id == null ? null : inFlight.get(r.id);
+        if (token == null) token = new CancelToken();
+        try {
+            CancelToken.run(token, () -> handle(server, send, r));
+        } catch (Exception e) {
+            if (CancelToken.isCancellation(e)) {
+                LOG.info(String.format("Request %d was cancelled", r.id));
                 if (r.id != null) {
-                    error(send, r.id, new ResponseError(ErrorCodes.InternalError, e.getMessage(), null));
+                    error(send, r.id, new ResponseError(ErrorCodes.RequestCancelled, "Request cancelled", null));
                 }
+                return;
             }
+            LOG.log(Level.SEVERE, e.getMessage(), e);
+            if (r.id != null) {
+                error(send, r.id, new ResponseError(ErrorCodes.InternalError, e.getMessage(), null));
+            }
+        } finally {
+            if (r.id != null) inFlight.remove(r.id);
+        }
+    }
+
+    private static void handle(LanguageServer server, OutputStream send, Message r) {
+        switch (r.method) {
+            case "initialize":
+                {
+                    var params = gson.fromJson(r.params, InitializeParams.class);
+                    var response = server.initialize(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "initialized":
+                {
+                    server.initialized();
+                    break;
+                }
+            case "shutdown":
+                {
+                    LOG.warning("Got shutdown message");
+                    respond(send, r.id, null);
+                    break;
+                }
+            case "workspace/didChangeWorkspaceFolders":
+                {
+                    var params = gson.fromJson(r.params, DidChangeWorkspaceFoldersParams.class);
+                    server.didChangeWorkspaceFolders(params);
+                    break;
+                }
+            case "workspace/didChangeConfiguration":
+                {
+                    var params = gson.fromJson(r.params, DidChangeConfigurationParams.class);
+                    server.didChangeConfiguration(params);
+                    break;
+                }
+            case "workspace/didChangeWatchedFiles":
+                {
+                    var params = gson.fromJson(r.params, DidChangeWatchedFilesParams.class);
+                    server.didChangeWatchedFiles(params);
+                    break;
+                }
+            case "workspace/symbol":
+                {
+                    var params = gson.fromJson(r.params, WorkspaceSymbolParams.class);
+                    var response = server.workspaceSymbols(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/documentLink":
+                {
+                    var params = gson.fromJson(r.params, DocumentLinkParams.class);
+                    var response = server.documentLink(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/didOpen":
+                {
+                    var params = gson.fromJson(r.params, DidOpenTextDocumentParams.class);
+                    server.didOpenTextDocument(params);
+                    break;
+                }
+            case "textDocument/didChange":
+                {
+                    var params = gson.fromJson(r.params, DidChangeTextDocumentParams.class);
+                    server.didChangeTextDocument(params);
+                    break;
+                }
+            case "textDocument/willSave":
+                {
+                    var params = gson.fromJson(r.params, WillSaveTextDocumentParams.class);
+                    server.willSaveTextDocument(params);
+                    break;
+                }
+            case "textDocument/willSaveWaitUntil":
+                {
+                    var params = gson.fromJson(r.params, WillSaveTextDocumentParams.class);
+                    var response = server.willSaveWaitUntilTextDocument(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/didSave":
+                {
+                    var params = gson.fromJson(r.params, DidSaveTextDocumentParams.class);
+                    server.didSaveTextDocument(params);
+                    break;
+                }
+            case "textDocument/didClose":
+                {
+                    var params = gson.fromJson(r.params, DidCloseTextDocumentParams.class);
+                    server.didCloseTextDocument(params);
+                    break;
+                }
+            case "textDocument/completion":
+                {
+                    var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                    var response = server.completion(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "completionItem/resolve":
+                {
+                    var params = gson.fromJson(r.params, CompletionItem.class);
+                    var response = server.resolveCompletionItem(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/hover":
+                {
+                    var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                    var response = server.hover(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/signatureHelp":
+                {
+                    var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                    var response = server.signatureHelp(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/definition":
+                {
+                    var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                    var response = server.gotoDefinition(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/references":
+                {
+                    var params = gson.fromJson(r.params, ReferenceParams.class);
+                    var response = server.findReferences(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/documentSymbol":
+                {
+                    var params = gson.fromJson(r.params, DocumentSymbolParams.class);
+                    var response = server.documentSymbol(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/codeAction":
+                {
+                    var params = gson.fromJson(r.params, CodeActionParams.class);
+                    var response = server.codeAction(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/codeLens":
+                {
+                    var params = gson.fromJson(r.params, CodeLensParams.class);
+                    var response = server.codeLens(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "codeLens/resolve":
+                {
+                    var params = gson.fromJson(r.params, CodeLens.class);
+                    var response = server.resolveCodeLens(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/prepareRename":
+                {
+                    var params = gson.fromJson(r.params, TextDocumentPositionParams.class);
+                    var response = server.prepareRename(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/rename":
+                {
+                    var params = gson.fromJson(r.params, RenameParams.class);
+                    var response = server.rename(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/formatting":
+                {
+                    var params = gson.fromJson(r.params, DocumentFormattingParams.class);
+                    var response = server.formatting(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "textDocument/foldingRange":
+                {
+                    var params = gson.fromJson(r.params, FoldingRangeParams.class);
+                    var response = server.foldingRange(params);
+                    respond(send, r.id, response);
+                    break;
+                }
+            case "$/cancelRequest":
+                // Already handled in peek(message)
+                break;
+            default:
+                LOG.warning(String.format("Don't know what to do with method `%s`", r.method));
         }
     }
 
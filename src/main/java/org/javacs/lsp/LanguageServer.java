@@ -117,4 +117,9 @@ public class LanguageServer {
     }
 
     public void doAsyncWork() {}
+
+    /** Is there async work to do, even though no messages have arrived since doAsyncWork() last ran? */
+    public boolean hasAsyncWork() {
+        return false;
+    }
 }
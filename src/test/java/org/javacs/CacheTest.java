@@ -0,0 +1,84 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.file.Path;
+import org.javacs.lsp.DidCloseTextDocumentParams;
+import org.javacs.lsp.DidOpenTextDocumentParams;
+import org.junit.Test;
+
+public class CacheTest {
+    private final Cache<String, Integer> cache = new Cache<>(2);
+    private final Path file = FindResource.path("/org/javacs/example/Goto.java");
+    private final Path other = FindResource.path("/org/javacs/example/GotoOther.java");
+
+    @Test
+    public void loadAndGet() {
+        assertTrue(cache.needs(file, "a"));
+        cache.load(file, "a", 1);
+        assertFalse(cache.needs(file, "a"));
+        assertThat(cache.get(file, "a"), equalTo(1));
+        assertThat(cache.hits(), equalTo(1L));
+        assertThat(cache.misses(), equalTo(1L));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        cache.load(file, "a", 1);
+        cache.load(file, "b", 2);
+        // Touch a, so b is the least-recently-used
+        cache.get(file, "a");
+        cache.load(other, "c", 3);
+        assertTrue(cache.has(file, "a"));
+        assertTrue(cache.needs(file, "b"));
+        assertTrue(cache.has(other, "c"));
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.evictions(), equalTo(1L));
+    }
+
+    @Test
+    public void purgeFile() {
+        cache.load(file, "a", 1);
+        cache.load(other, "b", 2);
+        cache.purge(file);
+        assertTrue(cache.needs(file, "a"));
+        assertTrue(cache.has(other, "b"));
+        assertThat(cache.size(), equalTo(1));
+    }
+
+    @Test
+    public void evictByWeight() {
+        var strings = new Cache<String, String>(10, String::length);
+        strings.load(file, "a", "12345");
+        strings.load(file, "b", "1234");
+        assertThat(strings.size(), equalTo(2));
+        strings.load(other, "c", "123");
+        assertTrue(strings.needs(file, "a"));
+        assertTrue(strings.has(file, "b"));
+        assertTrue(strings.has(other, "c"));
+        // A single value bigger than the limit is kept until something else is loaded
+        strings.load(other, "d", "12345678901");
+        assertThat(strings.size(), equalTo(1));
+    }
+
+    @Test
+    public void parseFileReusesParse() {
+        var first = Parser.parseFile(file);
+        assertThat(Parser.parseFile(file), sameInstance(first));
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument.uri = file.toUri();
+        open.textDocument.text = FileStore.contents(file);
+        open.textDocument.version = 1;
+        FileStore.open(open);
+        try {
+            var opened = Parser.parseFile(file);
+            assertThat(opened, not(sameInstance(first)));
+            assertThat(Parser.parseFile(file), sameInstance(opened));
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument.uri = file.toUri();
+            FileStore.close(close);
+        }
+    }
+}
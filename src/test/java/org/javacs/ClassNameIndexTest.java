@@ -0,0 +1,44 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import org.junit.Test;
+
+public class ClassNameIndexTest {
+    private final ClassNameIndex index =
+            ClassNameIndex.of(
+                    List.of(
+                            "java.util.ArrayList",
+                            "java.util.List",
+                            "java.awt.List",
+                            "java.util.LinkedList",
+                            "java.lang.ArrayIndexOutOfBoundsException",
+                            "java.lang.Array",
+                            "Arbitrary"));
+
+    @Test
+    public void exact() {
+        assertThat(index.exact("List"), containsInAnyOrder("java.util.List", "java.awt.List"));
+        assertThat(index.exact("Lis"), empty());
+    }
+
+    @Test
+    public void prefix() {
+        assertThat(
+                index.prefix("Arr"),
+                contains("java.lang.Array", "java.lang.ArrayIndexOutOfBoundsException", "java.util.ArrayList"));
+        assertThat(index.prefix("Zzz"), empty());
+    }
+
+    @Test
+    public void camelCase() {
+        assertThat(index.camelCase("AL"), contains("java.util.ArrayList"));
+        assertThat(index.camelCase("ArrLi"), contains("java.util.ArrayList"));
+        assertThat(index.camelCase("AIOOBE"), contains("java.lang.ArrayIndexOutOfBoundsException"));
+        assertThat(index.camelCase("LL"), contains("java.util.LinkedList"));
+        assertThat(index.camelCase("Ar"), hasSize(4));
+        assertThat(index.camelCase("AB"), empty());
+    }
+}
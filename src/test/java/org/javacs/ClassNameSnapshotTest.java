@@ -0,0 +1,107 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassNameSnapshotTest {
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        var storage = temp.getRoot().toPath().resolve("class-names");
+        var snapshot = new ClassNameSnapshot(storage);
+        var names = List.of("com.example.Foo", "com.example.FooBar", "com.example.sub.Baz", "Top");
+        snapshot.put("/lib/foo.jar", 100, 200, new ClassNameSnapshot.Entry(names, List.of("/lib/bar.jar")));
+        snapshot.save();
+
+        var reloaded = new ClassNameSnapshot(storage);
+        var entry = reloaded.find("/lib/foo.jar", 100, 200);
+        assertThat(entry.isPresent(), equalTo(true));
+        assertThat(entry.get().classes, containsInAnyOrder(names.toArray()));
+        assertThat(entry.get().classPath, contains("/lib/bar.jar"));
+        // If the jar has changed, the entry is out of date
+        assertThat(reloaded.find("/lib/foo.jar", 100, 201).isPresent(), equalTo(false));
+        assertThat(reloaded.find("/lib/other.jar", 100, 200).isPresent(), equalTo(false));
+    }
+
+    @Test
+    public void saveOverLoadedSnapshot() throws IOException {
+        var storage = temp.getRoot().toPath().resolve("class-names");
+        var first = new ClassNameSnapshot(storage);
+        first.put("/lib/foo.jar", 100, 200, new ClassNameSnapshot.Entry(List.of("com.example.Foo"), List.of()));
+        first.save();
+
+        // Replace the file that the loaded snapshot's entries came from
+        var second = new ClassNameSnapshot(storage);
+        second.put("/lib/bar.jar", 100, 200, new ClassNameSnapshot.Entry(List.of("com.example.Bar"), List.of()));
+        second.save();
+
+        var reloaded = new ClassNameSnapshot(storage);
+        assertThat(reloaded.find("/lib/foo.jar", 100, 200).get().classes, contains("com.example.Foo"));
+        assertThat(reloaded.find("/lib/bar.jar", 100, 200).get().classes, contains("com.example.Bar"));
+        try (var files = Files.list(temp.getRoot().toPath())) {
+            assertThat(files.count(), equalTo(1L));
+        }
+    }
+
+    @Test
+    public void scanOnlyNewJars() throws IOException {
+        var dir = temp.getRoot().toPath();
+        var jar = dir.resolve("example.jar");
+        try (var out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry("com/example/Foo.class"));
+            out.closeEntry();
+            out.putNextEntry(new JarEntry("com/example/Foo$Inner.class"));
+            out.closeEntry();
+        }
+        var snapshot = new ClassNameSnapshot(dir.resolve("class-names"));
+        ScanClassPath.setSnapshot(snapshot);
+        try {
+            assertThat(ScanClassPath.classPathTopLevelClasses(Set.of(jar)), contains("com.example.Foo"));
+            assertThat(snapshot.size(), equalTo(1));
+            // If the jar hasn't changed, its classes come from the snapshot instead of the jar
+            var size = Files.size(jar);
+            var modified = Files.getLastModifiedTime(jar).toMillis();
+            var fake = new ClassNameSnapshot.Entry(List.of("com.example.FromSnapshot"), List.of());
+            snapshot.put(jar.toRealPath().toString(), size, modified, fake);
+            assertThat(ScanClassPath.classPathTopLevelClasses(Set.of(jar)), contains("com.example.FromSnapshot"));
+        } finally {
+            ScanClassPath.setSnapshot(null);
+        }
+    }
+
+    @Test
+    public void followManifestClassPath() throws IOException {
+        var dir = temp.getRoot().toPath();
+        var manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "linked.jar");
+        try (var out = new JarOutputStream(Files.newOutputStream(dir.resolve("main.jar")), manifest)) {
+            out.putNextEntry(new JarEntry("com/example/Main.class"));
+            out.closeEntry();
+        }
+        try (var out = new JarOutputStream(Files.newOutputStream(dir.resolve("linked.jar")))) {
+            out.putNextEntry(new JarEntry("com/example/Linked.class"));
+            out.closeEntry();
+        }
+        ScanClassPath.setSnapshot(new ClassNameSnapshot(dir.resolve("class-names")));
+        try {
+            var found = ScanClassPath.classPathTopLevelClasses(Set.of(dir.resolve("main.jar")));
+            assertThat(found, containsInAnyOrder("com.example.Main", "com.example.Linked"));
+        } finally {
+            ScanClassPath.setSnapshot(null);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassPathCacheTest {
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws IOException {
+        var storage = temp.getRoot().toPath().resolve("class-path");
+        var cache = new ClassPathCache(storage);
+        var classPath = Set.of(Paths.get("/a.jar"), Paths.get("/b.jar"));
+        var docPath = Set.of(Paths.get("/a-sources.jar"));
+        cache.save(new ClassPathCache.Resolved("abc", classPath, docPath));
+
+        var found = new ClassPathCache(storage).find("abc");
+        assertTrue(found.isPresent());
+        assertThat(found.get().classPath, equalTo(classPath));
+        assertThat(found.get().docPath, equalTo(docPath));
+        assertFalse(new ClassPathCache(storage).find("def").isPresent());
+    }
+
+    @Test
+    public void storageIsPerWorkspace() {
+        var a = ClassPathCache.defaultStorage(Paths.get("/a/project"));
+        var b = ClassPathCache.defaultStorage(Paths.get("/b/project"));
+        assertThat(a, not(equalTo(b)));
+        assertTrue(a.startsWith(CacheDirectory.root()));
+    }
+
+    @Test
+    public void fingerprintChangesWithBuildFiles() throws IOException {
+        var workspace = temp.newFolder("workspace").toPath();
+        Files.writeString(workspace.resolve("pom.xml"), "<project></project>");
+        Files.createDirectories(workspace.resolve("src"));
+        Files.writeString(workspace.resolve("src").resolve("Main.java"), "class Main {}");
+        var before = ClassPathCache.fingerprint(workspace, List.of());
+
+        // Source files don't matter
+        Files.writeString(workspace.resolve("src").resolve("Main.java"), "class Main { int x; }");
+        assertThat(ClassPathCache.fingerprint(workspace, List.of()), equalTo(before));
+
+        // Build files and external dependencies do
+        assertThat(ClassPathCache.fingerprint(workspace, List.of("a:b:1")), not(equalTo(before)));
+        Files.writeString(workspace.resolve("pom.xml"), "<project><version>2</version></project>");
+        assertThat(ClassPathCache.fingerprint(workspace, List.of()), not(equalTo(before)));
+    }
+}
@@ -4,6 +4,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
 
 import java.util.Set;
+import org.javacs.lsp.*;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -19,4 +20,44 @@ public class FileStoreTest {
         var file = FindResource.path("/org/javacs/example/Goto.java");
         assertThat(FileStore.suggestedPackageName(file), equalTo("org.javacs.example"));
     }
+
+    @Test
+    public void lineIndex() {
+        var lines = LineIndex.of("foo\nbar\n\nbaz");
+        assertThat(lines.lines(), equalTo(4));
+        assertThat(lines.offset(1, 2), equalTo(6));
+        assertThat(lines.offset(3, 0), equalTo(9));
+        assertThat(lines.position(0).line, equalTo(0));
+        assertThat(lines.position(4).line, equalTo(1));
+        assertThat(lines.position(6).character, equalTo(2));
+        assertThat(lines.position(8).line, equalTo(2));
+        assertThat(lines.position(12).line, equalTo(3));
+        assertThat(lines.position(12).character, equalTo(3));
+    }
+
+    @Test
+    public void patchActiveDocument() {
+        var file = FindResource.path("/org/javacs/example/Goto.java");
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument.uri = file.toUri();
+        open.textDocument.text = "class Goto {\n    void foo() {}\n}";
+        open.textDocument.version = 1;
+        FileStore.open(open);
+        try {
+            var change = new DidChangeTextDocumentParams();
+            change.textDocument.uri = file.toUri();
+            change.textDocument.version = 2;
+            var evt = new TextDocumentContentChangeEvent();
+            evt.range = new Range(new Position(1, 9), new Position(1, 12));
+            evt.text = "bar";
+            change.contentChanges.add(evt);
+            FileStore.change(change);
+            assertThat(FileStore.contents(file), equalTo("class Goto {\n    void bar() {}\n}"));
+            assertThat(FileStore.offset(file, 3, 1), equalTo(31));
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument.uri = file.toUri();
+            FileStore.close(close);
+        }
+    }
 }
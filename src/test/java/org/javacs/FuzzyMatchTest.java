@@ -0,0 +1,66 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import org.junit.Test;
+
+public class FuzzyMatchTest {
+    @Test
+    public void matchesHumps() {
+        assertTrue(FuzzyMatch.matches("LinkedList", "list"));
+        assertTrue(FuzzyMatch.matches("FooBar", "fb"));
+        assertTrue(FuzzyMatch.matches("FooBar", "fob"));
+        assertTrue(FuzzyMatch.matches("AnyPrefixFooBar", "fb"));
+        assertTrue(FuzzyMatch.matches("AutocompleteBetweenLines", "ABetweenLines"));
+        assertTrue(FuzzyMatch.matches("ArrayIndexOutOfBoundsException", "AIOOBE"));
+        assertTrue(FuzzyMatch.matches("foo_bar", "fb"));
+        assertFalse(FuzzyMatch.matches("Foobar", "fb"));
+        assertFalse(FuzzyMatch.matches("FooBar", "fbz"));
+    }
+
+    @Test
+    public void backtracksToLaterWords() {
+        // Continuing `Ab` would use up the `b` that `Bc` needs
+        assertTrue(FuzzyMatch.matches("AbXBc", "abc"));
+        assertTrue(FuzzyMatch.matches("GetBufferedBytes", "gebyt"));
+        assertFalse(FuzzyMatch.matches("AbXBd", "abc"));
+    }
+
+    @Test
+    public void ranksPrefixAboveHumps() {
+        assertThat(FuzzyMatch.score("List", "list"), greaterThan(FuzzyMatch.score("LinkedList", "list")));
+        assertThat(FuzzyMatch.score("ListIterator", "List"), greaterThan(FuzzyMatch.score("ArrayList", "List")));
+    }
+
+    @Test
+    public void ranksContiguousAboveScattered() {
+        assertThat(FuzzyMatch.score("FooBar", "foob"), greaterThan(FuzzyMatch.score("FoBar", "fob")));
+        assertThat(FuzzyMatch.score("ArrayList", "ArrLi"), greaterThan(FuzzyMatch.score("ArrayLinkedList", "ArrLi")));
+    }
+
+    @Test
+    public void ranksShorterAboveLonger() {
+        assertThat(FuzzyMatch.score("Map", "Ma"), greaterThan(FuzzyMatch.score("MapEntry", "Ma")));
+    }
+
+    @Test
+    public void topKeepsBest() {
+        var top = new FuzzyMatch.Top<String>(2);
+        for (var name : List.of("LinkedList", "ArrayList", "List", "ListIterator", "Lisp")) {
+            top.add(name, FuzzyMatch.score(name, "List"));
+        }
+        assertThat(top.best(), contains("List", "ListIterator"));
+    }
+
+    @Test
+    public void topKeepsFirstOfEqualScores() {
+        var top = new FuzzyMatch.Top<String>(2);
+        top.add("a", 1);
+        top.add("b", 1);
+        top.add("c", 1);
+        top.add("d", FuzzyMatch.NO_MATCH);
+        assertThat(top.best(), contains("a", "b"));
+    }
+}
@@ -0,0 +1,84 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.nio.file.Paths;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GradleCacheIndexTest {
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private Path gradleHome, storage;
+
+    @Before
+    public void createGradleHome() throws IOException {
+        var root = temp.getRoot().toPath();
+        gradleHome = root.resolve(".gradle");
+        storage = root.resolve("cache").resolve("jars");
+    }
+
+    private Path install(String group, String artifact, String version, String hash, String fileName)
+            throws IOException {
+        var dir =
+                gradleHome
+                        .resolve("caches/modules-2/files-2.1")
+                        .resolve(group)
+                        .resolve(artifact)
+                        .resolve(version)
+                        .resolve(hash);
+        Files.createDirectories(dir);
+        var jar = dir.resolve(fileName);
+        Files.writeString(jar, "");
+        return jar;
+    }
+
+    @Test
+    public void findJarsAndSources() throws IOException {
+        var jar = install("com.example", "lib", "1.0", "aaaa", "lib-1.0.jar");
+        var sources = install("com.example", "lib", "1.0", "bbbb", "lib-1.0-sources.jar");
+        install("com.example", "lib", "1.0", "cccc", "lib-1.0.pom");
+        var index = new GradleCacheIndex(gradleHome, storage);
+
+        assertThat(index.find("com.example", "lib", "1.0", ""), equalTo(Optional.of(jar)));
+        assertThat(index.find("com.example", "lib", "1.0", "sources"), equalTo(Optional.of(sources)));
+        assertFalse(index.find("com.example", "lib", "2.0", "").isPresent());
+        assertFalse(index.find("com.example", "other", "1.0", "").isPresent());
+    }
+
+    @Test
+    public void savedIndexIsReused() throws IOException {
+        var jar = install("com.example", "lib", "1.0", "aaaa", "lib-1.0.jar");
+        new GradleCacheIndex(gradleHome, storage).find("com.example", "lib", "1.0", "");
+        assertTrue(Files.exists(storage));
+
+        var reloaded = new GradleCacheIndex(gradleHome, storage);
+        assertThat(reloaded.find("com.example", "lib", "1.0", ""), equalTo(Optional.of(jar)));
+    }
+
+    @Test
+    public void staleSavedIndexIsRebuilt() throws IOException {
+        install("com.example", "lib", "1.0", "aaaa", "lib-1.0.jar");
+        new GradleCacheIndex(gradleHome, storage).find("com.example", "lib", "1.0", "");
+
+        // Gradle downloads a new version after the index was saved
+        var newer = install("com.example", "lib", "2.0", "bbbb", "lib-2.0.jar");
+        var reloaded = new GradleCacheIndex(gradleHome, storage);
+        assertThat(reloaded.find("com.example", "lib", "2.0", ""), equalTo(Optional.of(newer)));
+    }
+
+    @Test
+    public void storageIsPerGradleHome() {
+        var a = GradleCacheIndex.defaultStorage(Paths.get("/a/.gradle"));
+        var b = GradleCacheIndex.defaultStorage(Paths.get("/b/.gradle"));
+        assertThat(a, not(equalTo(b)));
+        assertTrue(a.startsWith(CacheDirectory.root()));
+    }
+}
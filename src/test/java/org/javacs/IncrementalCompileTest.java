@@ -1,6 +1,6 @@
 package org.javacs;
 
-import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
 
 import com.sun.source.tree.MethodInvocationTree;
@@ -44,14 +44,36 @@ public class IncrementalCompileTest implements TaskListener, DiagnosticListener<
     @Test
     public void taskPool() {
         var fileManager = compiler.getStandardFileManager(this, null, Charset.defaultCharset());
-        var pool = new ReusableCompiler();
+        var pool = new ReusableCompiler(() -> fileManager);
         for (var i = 0; i < 2; i++) {
             var files = fileManager.getJavaFileObjects(foo);
             LOG.info(String.format("Compile %d...", i));
-            try (var borrow = pool.getTask(null, fileManager, this, options, null, files)) {
+            try (var borrow = pool.getTask(null, this, options, null, files)) {
                 checkInvokeType(borrow.task);
             }
         }
+        assertThat(pool.creations(), equalTo(1));
+    }
+
+    @Test
+    public void concurrentBorrows() throws IOException {
+        var fileManager = compiler.getStandardFileManager(this, null, Charset.defaultCharset());
+        var files = fileManager.getJavaFileObjects(foo);
+        var pool = new ReusableCompiler(SourceFileManager::new, 2);
+        var first = pool.getTask(null, this, options, null, files);
+        var second = pool.getTask(null, this, options, null, files);
+        assertThat(first.fileManager, not(sameInstance(second.fileManager)));
+        assertThat(pool.creations(), equalTo(2));
+        first.task.parse();
+        second.task.parse();
+        // Once a context is returned, the next borrow reuses it
+        second.close();
+        var third = pool.getTask(null, this, options, null, files);
+        third.task.parse();
+        assertThat(pool.creations(), equalTo(2));
+        assertThat(pool.borrows(), equalTo(3));
+        first.close();
+        third.close();
     }
 
     private void checkInvokeType(JavacTask task) {
@@ -3,10 +3,14 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Set;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class InferConfigTest {
     private Path workspaceRoot = Paths.get("src/test/examples/maven-project");
@@ -17,6 +21,8 @@ public class InferConfigTest {
     private InferConfig gradle = new InferConfig(workspaceRoot, externalDependencies, Paths.get("nowhere"), gradleHome);
     private InferConfig thisProject = new InferConfig(Paths.get("."), Set.of());
 
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
     @Test
     public void mavenClassPath() {
         assertThat(
@@ -57,7 +63,7 @@ public class InferConfigTest {
 
     @Test
     public void dependencyList() {
-        assertThat(InferConfig.mvnDependencies(Paths.get("pom.xml"), "dependency:list"), not(empty()));
+        assertThat(InferConfig.mvnDependencies(Paths.get("pom.xml"), "dependency:list").get(), not(empty()));
     }
 
     @Test
@@ -94,4 +100,13 @@ public class InferConfigTest {
             assertThat(path, equalTo(Paths.get(expect)));
         }
     }
+
+    @Test
+    public void brokenPomIsAFailure() throws IOException {
+        var workspace = temp.newFolder("broken").toPath();
+        Files.writeString(workspace.resolve("pom.xml"), "<project>");
+        var infer = new InferConfig(workspace, Set.of(), temp.newFolder("m2").toPath(), Paths.get("nowhere"));
+        assertThat(infer.classPath(), empty());
+        assertTrue(infer.buildToolFailed());
+    }
 }
@@ -44,13 +44,15 @@ class LanguageServerFixture {
                 });
     }
 
-    private static JavaLanguageServer getJavaLanguageServer(Path workspaceRoot, LanguageClient client) {
+    static JavaLanguageServer getJavaLanguageServer(Path workspaceRoot, LanguageClient client) {
         var server = new JavaLanguageServer(client);
         var init = new InitializeParams();
 
         init.rootUri = workspaceRoot.toUri();
         server.initialize(init);
         server.initialized();
+        // Requests that need javac return nothing until it's configured, so configure it before the first test
+        server.compiler();
 
         return server;
     }
@@ -0,0 +1,253 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MavenResolverTest {
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+    private Path repository, project;
+
+    @Before
+    public void createRepository() throws IOException {
+        var root = temp.getRoot().toPath();
+        repository = root.resolve("repository");
+        project = root.resolve("project");
+        Files.createDirectories(project);
+    }
+
+    private Path install(String groupId, String artifactId, String version, String body) throws IOException {
+        var dir = repository.resolve(groupId.replace('.', '/')).resolve(artifactId).resolve(version);
+        Files.createDirectories(dir);
+        var pom =
+                String.format(
+                        "<project><groupId>%s</groupId><artifactId>%s</artifactId><version>%s</version>%s</project>",
+                        groupId, artifactId, version, body);
+        Files.writeString(dir.resolve(artifactId + "-" + version + ".pom"), pom);
+        var jar = dir.resolve(artifactId + "-" + version + ".jar");
+        Files.writeString(jar, "");
+        return jar;
+    }
+
+    private Path pom(String body) throws IOException {
+        var pomXml = project.resolve("pom.xml");
+        Files.writeString(
+                pomXml,
+                "<project><groupId>test</groupId><artifactId>project</artifactId><version>1</version>"
+                        + body
+                        + "</project>");
+        return pomXml;
+    }
+
+    private static String dependency(String groupId, String artifactId, String version) {
+        return String.format(
+                "<dependency><groupId>%s</groupId><artifactId>%s</artifactId><version>%s</version></dependency>",
+                groupId, artifactId, version);
+    }
+
+    @Test
+    public void nearestVersionWins() throws IOException {
+        install("test", "b", "1.0", "");
+        var b2 = install("test", "b", "2.0", "");
+        var a = install("test", "a", "1.0", "<dependencies>" + dependency("test", "b", "1.0") + "</dependencies>");
+        var dependencies = dependency("test", "a", "1.0") + dependency("test", "b", "2.0");
+        var pomXml = pom("<dependencies>" + dependencies + "</dependencies>");
+
+        var classPath = new MavenResolver(repository).classPath(pomXml);
+        assertTrue(classPath.isPresent());
+        assertThat(classPath.get(), equalTo(Set.of(a, b2)));
+    }
+
+    @Test
+    public void transitiveTestDependenciesAreSkipped() throws IOException {
+        var c = install("test", "c", "1.0", "");
+        install("test", "junit", "1.0", "");
+        var b =
+                install(
+                        "test",
+                        "b",
+                        "1.0",
+                        "<dependencies>"
+                                + dependency("test", "c", "1.0")
+                                + "<dependency><groupId>test</groupId><artifactId>junit</artifactId>"
+                                + "<version>1.0</version><scope>test</scope></dependency>"
+                                + "</dependencies>");
+        var pomXml = pom("<dependencies>" + dependency("test", "b", "1.0") + "</dependencies>");
+
+        var classPath = new MavenResolver(repository).classPath(pomXml);
+        assertThat(classPath.get(), equalTo(Set.of(b, c)));
+    }
+
+    @Test
+    public void parentPropertiesAndImportedBom() throws IOException {
+        var a = install("test", "a", "3.0", "");
+        install(
+                "test",
+                "bom",
+                "1.0",
+                "<dependencyManagement><dependencies>"
+                        + dependency("test", "a", "3.0")
+                        + "</dependencies></dependencyManagement>");
+        var b = install("test", "b", "2.0", "");
+        install(
+                "test",
+                "parent",
+                "1.0",
+                "<properties><b.version>2.0</b.version></properties>"
+                        + "<dependencyManagement><dependencies>"
+                        + "<dependency><groupId>test</groupId><artifactId>bom</artifactId><version>1.0</version>"
+                        + "<type>pom</type><scope>import</scope></dependency>"
+                        + "</dependencies></dependencyManagement>");
+        var pomXml =
+                pom(
+                        "<parent><groupId>test</groupId><artifactId>parent</artifactId><version>1.0</version></parent>"
+                                + "<dependencies>"
+                                + "<dependency><groupId>test</groupId><artifactId>a</artifactId></dependency>"
+                                + dependency("test", "b", "${b.version}")
+                                + "</dependencies>");
+
+        var classPath = new MavenResolver(repository).classPath(pomXml);
+        assertTrue(classPath.isPresent());
+        assertThat(classPath.get(), equalTo(Set.of(a, b)));
+    }
+
+    @Test
+    public void missingJarFallsBack() throws IOException {
+        var jar = install("test", "a", "1.0", "");
+        Files.delete(jar);
+        var pomXml = pom("<dependencies>" + dependency("test", "a", "1.0") + "</dependencies>");
+
+        assertFalse(new MavenResolver(repository).classPath(pomXml).isPresent());
+    }
+
+    @Test
+    public void missingPomFallsBack() throws IOException {
+        var pomXml = pom("<dependencies>" + dependency("test", "missing", "1.0") + "</dependencies>");
+
+        assertFalse(new MavenResolver(repository).classPath(pomXml).isPresent());
+    }
+
+    @Test
+    public void docPathFindsSources() throws IOException {
+        var a = install("test", "a", "1.0", "");
+        var sources = a.resolveSibling("a-1.0-sources.jar");
+        Files.writeString(sources, "");
+        var pomXml = pom("<dependencies>" + dependency("test", "a", "1.0") + "</dependencies>");
+
+        var docPath = new MavenResolver(repository).docPath(pomXml);
+        assertThat(docPath.get(), equalTo(Set.of(sources)));
+    }
+
+    @Test
+    public void missingSourcesFallBack() throws IOException {
+        var a = install("test", "a", "1.0", "");
+        install("test", "b", "1.0", "");
+        Files.writeString(a.resolveSibling("a-1.0-sources.jar"), "");
+        var dependencies = dependency("test", "a", "1.0") + dependency("test", "b", "1.0");
+        var pomXml = pom("<dependencies>" + dependencies + "</dependencies>");
+
+        assertFalse(new MavenResolver(repository).docPath(pomXml).isPresent());
+    }
+
+    @Test
+    public void childPropertiesOverrideParentManagement() throws IOException {
+        install("test", "a", "1.0", "");
+        var a2 = install("test", "a", "2.0", "");
+        install(
+                "test",
+                "parent",
+                "1.0",
+                "<properties><a.version>1.0</a.version></properties>"
+                        + "<dependencyManagement><dependencies>"
+                        + dependency("test", "a", "${a.version}")
+                        + "</dependencies></dependencyManagement>");
+        var pomXml =
+                pom(
+                        "<parent><groupId>test</groupId><artifactId>parent</artifactId><version>1.0</version></parent>"
+                                + "<properties><a.version>2.0</a.version></properties>"
+                                + "<dependencies>"
+                                + "<dependency><groupId>test</groupId><artifactId>a</artifactId></dependency>"
+                                + "</dependencies>");
+
+        var classPath = new MavenResolver(repository).classPath(pomXml);
+        assertThat(classPath.get(), equalTo(Set.of(a2)));
+    }
+
+    @Test
+    public void emptyRelativePathUsesRepository() throws IOException {
+        var a = install("test", "a", "1.0", "");
+        install("test", "parent", "1.0", "<dependencies>" + dependency("test", "a", "1.0") + "</dependencies>");
+        var pomXml =
+                pom(
+                        "<parent><groupId>test</groupId><artifactId>parent</artifactId><version>1.0</version>"
+                                + "<relativePath/></parent>");
+
+        var classPath = new MavenResolver(repository).classPath(pomXml);
+        assertThat(classPath.get(), equalTo(Set.of(a)));
+    }
+
+    @Test
+    public void parentCycleFallsBack() throws IOException {
+        var pomXml =
+                pom(
+                        "<parent><groupId>test</groupId><artifactId>project</artifactId><version>1</version>"
+                                + "<relativePath>pom.xml</relativePath></parent>");
+
+        assertFalse(new MavenResolver(repository).classPath(pomXml).isPresent());
+    }
+
+    @Test
+    public void bomCycleFallsBack() throws IOException {
+        var importSelf =
+                "<dependencyManagement><dependencies>"
+                        + "<dependency><groupId>test</groupId><artifactId>bom</artifactId><version>1.0</version>"
+                        + "<type>pom</type><scope>import</scope></dependency>"
+                        + "</dependencies></dependencyManagement>";
+        install("test", "bom", "1.0", importSelf);
+        var pomXml = pom(importSelf);
+
+        assertFalse(new MavenResolver(repository).classPath(pomXml).isPresent());
+    }
+
+    @Test
+    public void modulesFallBack() throws IOException {
+        var pomXml = pom("<packaging>pom</packaging><modules><module>child</module></modules>");
+
+        assertFalse(new MavenResolver(repository).classPath(pomXml).isPresent());
+    }
+
+    @Test
+    public void profileDependenciesFallBack() throws IOException {
+        install("test", "a", "1.0", "");
+        var pomXml =
+                pom(
+                        "<profiles><profile><id>extra</id><dependencies>"
+                                + dependency("test", "a", "1.0")
+                                + "</dependencies></profile></profiles>");
+
+        assertFalse(new MavenResolver(repository).classPath(pomXml).isPresent());
+    }
+
+    @Test
+    public void buildOnlyProfilesAreIgnored() throws IOException {
+        var a = install("test", "a", "1.0", "");
+        var pomXml =
+                pom(
+                        "<dependencies>"
+                                + dependency("test", "a", "1.0")
+                                + "</dependencies>"
+                                + "<profiles><profile><id>release</id><build></build></profile></profiles>");
+
+        var classPath = new MavenResolver(repository).classPath(pomXml);
+        assertThat(classPath.get(), equalTo(Set.of(a)));
+    }
+}
@@ -0,0 +1,52 @@
+package org.javacs;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import org.junit.Test;
+
+public class MultiStringSearchTest {
+    @Test
+    public void findsEveryPattern() {
+        var search = new MultiStringSearch(List.of("he", "she", "his", "hers"));
+        assertArrayEquals(new long[] {1, 2, 2}, search.offsets("ushers", false));
+    }
+
+    @Test
+    public void findsOverlappingSuffixes() {
+        var search = new MultiStringSearch(List.of("abcd", "bc", "c"));
+        assertArrayEquals(new long[] {2, 3}, search.offsets("xabcx", false));
+    }
+
+    @Test
+    public void findsEveryOccurrence() {
+        var search = new MultiStringSearch(List.of("ana"));
+        assertArrayEquals(new long[] {1, 3}, search.offsets("banana", false));
+    }
+
+    @Test
+    public void wholeWords() {
+        var search = new MultiStringSearch(List.of("foo", "bar", "baz"));
+        assertArrayEquals(new long[] {15}, search.offsets("foobar bar_baz foo.", true));
+    }
+
+    @Test
+    public void laterWholeWordOccurrence() {
+        var search = new MultiStringSearch(List.of("List"));
+        assertArrayEquals(new long[] {13}, search.offsets("ArrayList x; List y;", true));
+        assertArrayEquals(new long[] {}, search.offsets("ArrayList x; Lists y;", true));
+        assertArrayEquals(new long[] {}, search.offsets("$List x;", true));
+    }
+
+    @Test
+    public void offsetsCountChars() {
+        var search = new MultiStringSearch(List.of("größe", "x"));
+        assertArrayEquals(new long[] {6, 14}, search.offsets("/* 😀 größe = x; */", true));
+    }
+
+    @Test
+    public void emptyPatternNeverMatches() {
+        var search = new MultiStringSearch(List.of("", "a"));
+        assertArrayEquals(new long[] {1, 3}, search.offsets("ba a", false));
+    }
+}
@@ -0,0 +1,96 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.javacs.lsp.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParserTest {
+
+    @Before
+    public void setWorkspaceRoot() {
+        FileStore.setWorkspaceRoots(Set.of(LanguageServerFixture.DEFAULT_WORKSPACE_ROOT));
+    }
+
+    private static Set<String> symbols(Parser parse) {
+        return parse.documentSymbols()
+                .stream()
+                .map(s -> s.name + "@" + s.location.range.start.line + ":" + s.location.range.start.character)
+                .collect(Collectors.toSet());
+    }
+
+    private static Set<String> folds(Parser parse) {
+        return parse.foldingRanges()
+                .stream()
+                .map(r -> r.startLine + ":" + r.startCharacter + "-" + r.endLine + ":" + r.endCharacter)
+                .collect(Collectors.toSet());
+    }
+
+    @Test
+    public void outlineReparsesEditedMethod() {
+        var file = FindResource.path("/org/javacs/example/Goto.java");
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument.uri = file.toUri();
+        open.textDocument.text =
+                "class Goto {\n"
+                        + "    void foo() {\n"
+                        + "        int x = 1;\n"
+                        + "    }\n"
+                        + "    void bar() {\n"
+                        + "        class Local {\n"
+                        + "            void inner() { if (true) {\n"
+                        + "            } }\n"
+                        + "        }\n"
+                        + "    }\n"
+                        + "}";
+        open.textDocument.version = 1;
+        FileStore.open(open);
+        try {
+            var first = Parser.outline(file);
+            assertThat(symbols(first), hasItems("foo@1:9", "Local@5:14", "inner@6:17"));
+            // Add two lines to the body of foo, which moves bar and the local class inside it
+            var change = new DidChangeTextDocumentParams();
+            change.textDocument.uri = file.toUri();
+            change.textDocument.version = 2;
+            var evt = new TextDocumentContentChangeEvent();
+            evt.range = new Range(new Position(2, 18), new Position(2, 18));
+            evt.text = "\n        if (x > 0) {\n        }";
+            change.contentChanges.add(evt);
+            FileStore.change(change);
+
+            var outline = Parser.outline(file);
+            var full = Parser.parseJavaFileObject(new SourceFileObject(file, FileStore.contents(file), Instant.now()));
+            assertThat(outline, not(sameInstance(Parser.parseFile(file))));
+            assertThat(symbols(outline), equalTo(symbols(full)));
+            assertThat(symbols(outline), hasItems("Local@7:14", "inner@8:17"));
+            assertThat(folds(outline), equalTo(folds(full)));
+            assertThat(outline.codeLensDeclarations(), hasSize(full.codeLensDeclarations().size()));
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument.uri = file.toUri();
+            FileStore.close(close);
+        }
+    }
+
+    private String apiFingerprint(String contents) {
+        var file = Paths.get("/Fingerprint.java");
+        return Parser.parseJavaFileObject(new SourceFileObject(file, contents, Instant.now())).apiFingerprint();
+    }
+
+    @Test
+    public void apiFingerprintIgnoresBodies() {
+        var original = apiFingerprint("class Fingerprint { int f(int x) { return 1; } private int g; }");
+        var sameApi = apiFingerprint("class Fingerprint { int f(int y) { return 2; } private long g; }");
+        var newMethod = apiFingerprint("class Fingerprint { int f(int x) { return 1; } void h() {} private int g; }");
+        var newType = apiFingerprint("class Fingerprint { int f(long x) { return 1; } private int g; }");
+        assertThat(sameApi, equalTo(original));
+        assertThat(newMethod, not(equalTo(original)));
+        assertThat(newType, not(equalTo(original)));
+    }
+}
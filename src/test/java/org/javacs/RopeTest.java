@@ -0,0 +1,57 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class RopeTest {
+    @Test
+    public void lineAndOffset() {
+        var rope = Rope.of("foo\nbar\n\nbaz");
+        assertThat(rope.lines(), equalTo(4));
+        assertThat(rope.lineStart(1), equalTo(4));
+        assertThat(rope.lineStart(3), equalTo(9));
+        assertThat(rope.line(5), equalTo(1));
+        assertThat(rope.offset(1, 2), equalTo(6));
+        // Positions past the end of a line are clamped to the end of the line
+        assertThat(rope.offset(0, 100), equalTo(3));
+        assertThat(rope.offset(100, 0), equalTo(rope.length()));
+    }
+
+    @Test
+    public void randomEdits() {
+        var random = new Random(0);
+        var expected = new StringBuilder();
+        for (var i = 0; i < 5_000; i++) {
+            expected.append(i % 40 == 0 ? '\n' : (char) ('a' + i % 26));
+        }
+        var rope = Rope.of(expected.toString());
+        for (var i = 0; i < 2_000; i++) {
+            var start = random.nextInt(expected.length() + 1);
+            var end = Math.min(expected.length(), start + random.nextInt(20));
+            var text = random.nextInt(10) == 0 ? "x\ny" : "z";
+            expected.replace(start, end, text);
+            rope = rope.replace(start, end, text);
+        }
+        assertThat(rope.toString(), equalTo(expected.toString()));
+        var line = 0;
+        for (var offset = 0; offset < expected.length(); offset++) {
+            assertThat(rope.charAt(offset), equalTo(expected.charAt(offset)));
+            assertThat(rope.line(offset), equalTo(line));
+            if (expected.charAt(offset) == '\n') {
+                line++;
+                assertThat(rope.lineStart(line), equalTo(offset + 1));
+            }
+        }
+    }
+
+    @Test
+    public void editsDontChangeEarlierVersions() {
+        var before = Rope.of("class Foo {}");
+        var after = before.replace(6, 9, "Bar");
+        assertThat(after.toString(), equalTo("class Bar {}"));
+        assertThat(before.toString(), equalTo("class Foo {}"));
+    }
+}
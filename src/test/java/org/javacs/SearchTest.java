@@ -12,11 +12,15 @@ import java.util.StringJoiner;
 import java.util.stream.Collectors;
 import org.javacs.lsp.*;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class SearchTest {
     private static final JavaLanguageServer server = LanguageServerFixture.getJavaLanguageServer();
 
+    @Rule public TemporaryFolder temp = new TemporaryFolder();
+
     @BeforeClass
     public static void openSource() throws IOException {
         var uri = FindResource.uri("/org/javacs/example/AutocompleteBetweenLines.java");
@@ -28,6 +32,7 @@ public class SearchTest {
         document.uri = uri;
         document.text = textContent.toString();
         server.didOpenTextDocument(new DidOpenTextDocumentParams(document));
+        server.awaitSymbolIndex();
     }
 
     private static Set<String> searchWorkspace(String query, int limit) {
@@ -66,6 +71,22 @@ public class SearchTest {
         assertThat(all, hasItem("methodStatic"));
     }
 
+    @Test
+    public void reloadSavedIndex() throws IOException {
+        var storage = temp.getRoot().toPath().resolve("symbols");
+        var index = new SymbolIndex(storage);
+        index.update();
+        index.save();
+        var reloaded = new SymbolIndex(storage);
+        var all =
+                reloaded.search("ABetweenLines", Integer.MAX_VALUE)
+                        .stream()
+                        .map(s -> s.name)
+                        .collect(Collectors.toSet());
+
+        assertThat(all, hasItem("AutocompleteBetweenLines"));
+    }
+
     @Test
     public void symbolsInFile() {
         var path = "/org/javacs/example/AutocompleteMemberFixed.java";
@@ -84,5 +84,19 @@ public class SourceFileManagerTest {
         assertTrue(header.isPublic);
     }
 
+    @Test
+    public void eraseMethodBodiesOfDependencies() throws IOException {
+        var fileManager = new SourceFileManager(true);
+        var file =
+                fileManager.getJavaFileForInput(
+                        StandardLocation.SOURCE_PATH, "org.javacs.example.Goto", JavaFileObject.Kind.SOURCE);
+        var contents = file.getCharContent(true).toString();
+        assertThat(contents, containsString("public void test()"));
+        assertThat(contents, not(containsString("local = new Goto(\"Foo\");")));
+        // Erasing doesn't move anything
+        var original = FileStore.contents(FindResource.path("/org/javacs/example/Goto.java"));
+        assertThat(contents.length(), equalTo(original.length()));
+    }
+
     private static final Logger LOG = Logger.getLogger("main");
 }
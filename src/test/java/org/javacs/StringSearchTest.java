@@ -3,15 +3,13 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.Collections;
 import java.util.stream.Collectors;
 import org.javacs.lsp.DidChangeTextDocumentParams;
 import org.javacs.lsp.DidCloseTextDocumentParams;
 import org.javacs.lsp.DidOpenTextDocumentParams;
 import org.javacs.lsp.TextDocumentContentChangeEvent;
+import org.javacs.lsp.WorkspaceSymbolParams;
 import org.junit.Test;
 
 public class StringSearchTest {
@@ -79,42 +77,44 @@ public class StringSearchTest {
         assertTrue(StringSearch.matchesTitleCase("Prefix AutocompleteBetweenLines", "ABetweenLines"));
         assertTrue(StringSearch.matchesTitleCase("Prefix UPPERFooBar", "fb"));
         assertFalse(StringSearch.matchesTitleCase("Foo Bar", "fb"));
+        assertTrue(StringSearch.matchesTitleCase("foo_bar", "fb"));
+        assertFalse(StringSearch.matchesTitleCase("foobar", "fb"));
     }
 
     @Test
     public void searchLargeFile() {
         var largeFile = Paths.get(FindResource.uri("/org/javacs/example/LargeFile.java"));
-        assertTrue(StringSearch.containsWordMatching(largeFile, "removeMethodBodies"));
-        assertFalse(StringSearch.containsWordMatching(largeFile, "removeMethodBodiez"));
+        assertTrue(StringSearch.containsWord(largeFile, "removeMethodBodies"));
+        assertFalse(StringSearch.containsWord(largeFile, "removeMethodBodiez"));
     }
 
     @Test
     public void searchSmallFile() {
         var smallFile = Paths.get(FindResource.uri("/org/javacs/example/Goto.java"));
-        assertTrue(StringSearch.containsWordMatching(smallFile, "nonDefaultConstructor"));
-        assertFalse(StringSearch.containsWordMatching(smallFile, "removeMethodBodies"));
+        assertTrue(StringSearch.containsWord(smallFile, "nonDefaultConstructor"));
+        assertFalse(StringSearch.containsWord(smallFile, "removeMethodBodies"));
     }
 
     @Test
-    public void searchOpenFile() {
-        // Open file
+    public void searchEditedOpenFile() {
         var smallFile = Paths.get(FindResource.uri("/org/javacs/example/Goto.java"));
         var open = new DidOpenTextDocumentParams();
         open.textDocument.text = FileStore.contents(smallFile);
         open.textDocument.uri = smallFile.toUri();
+        open.textDocument.version = 1;
         FileStore.open(open);
-        // Edit file
         var change = new DidChangeTextDocumentParams();
         change.textDocument.uri = smallFile.toUri();
+        change.textDocument.version = 2;
         var evt = new TextDocumentContentChangeEvent();
-        evt.text = "package org.javacs.example; class Foo { }";
+        evt.text = "package org.javacs.example; class UnsavedEdit { }";
         change.contentChanges.add(evt);
         FileStore.change(change);
-        // Check that Parser sees the edits
         try {
-            assertTrue(StringSearch.containsWordMatching(smallFile, "Foo"));
+            assertTrue(StringSearch.containsWord(smallFile, "UnsavedEdit"));
+            assertTrue(StringSearch.containsString(smallFile, "class UnsavedEdit"));
+            assertFalse(StringSearch.containsWord(smallFile, "nonDefaultConstructor"));
         } finally {
-            // Close file
             var close = new DidCloseTextDocumentParams();
             close.textDocument.uri = smallFile.toUri();
             FileStore.close(close);
@@ -133,29 +133,13 @@ public class StringSearchTest {
     public void findAutocompleteBetweenLines() {
         var rel = Paths.get("src", "org", "javacs", "example", "AutocompleteBetweenLines.java");
         var file = LanguageServerFixture.DEFAULT_WORKSPACE_ROOT.resolve(rel);
-        assertTrue(StringSearch.containsWordMatching(file, "ABetweenLines"));
-    }
-
-    @Test
-    public void findExistingImports() {
-        var rel = Paths.get("src", "org", "javacs", "doimport");
-        var dir = LanguageServerFixture.DEFAULT_WORKSPACE_ROOT.resolve(rel);
-        FileStore.setWorkspaceRoots(Collections.singleton(dir));
-        var existing = StringSearch.existingImports(FileStore.all());
-        assertThat(existing.classes, hasItems("java.util.List"));
-        assertThat(existing.packages, hasItems("java.util", "java.io"));
-    }
-
-    @Test
-    public void findExistingImportsInBatch() throws IOException {
-        var allJavaFiles =
-                Files.walk(JavaCompilerServiceTest.simpleProjectSrc())
-                        .filter(f -> f.getFileName().toString().endsWith(".java"))
+        var server = LanguageServerFixture.getJavaLanguageServer();
+        server.awaitSymbolIndex();
+        var found =
+                server.workspaceSymbols(new WorkspaceSymbolParams("ABetweenLines"))
+                        .stream()
+                        .map(s -> s.location.uri)
                         .collect(Collectors.toSet());
-        assertThat(allJavaFiles, not(empty()));
-
-        var find = StringSearch.existingImports(allJavaFiles);
-        assertThat(find.classes, hasItem("java.util.List"));
-        assertThat(find.packages, hasItem("java.util"));
+        assertThat(found, hasItem(file.toUri()));
     }
 }
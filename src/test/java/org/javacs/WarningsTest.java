@@ -3,9 +3,12 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import com.google.gson.JsonElement;
+import java.net.URI;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
-import org.javacs.lsp.Diagnostic;
+import org.javacs.lsp.*;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -49,6 +52,78 @@ public class WarningsTest {
         assertThat(errors, empty());
     }
 
+    @Test
+    public void lintOnlyChangedFiles() {
+        var linted = new ArrayList<URI>();
+        var client =
+                new LanguageClient() {
+                    @Override
+                    public void publishDiagnostics(PublishDiagnosticsParams params) {
+                        linted.add(params.uri);
+                    }
+
+                    @Override
+                    public void showMessage(ShowMessageParams params) {}
+
+                    @Override
+                    public void registerCapability(String method, JsonElement options) {}
+
+                    @Override
+                    public void customNotification(String method, JsonElement params) {}
+                };
+        var server = LanguageServerFixture.getJavaLanguageServer(LanguageServerFixture.DEFAULT_WORKSPACE_ROOT, client);
+        var unused = FindResource.path("org/javacs/warn/Unused.java");
+        var other = FindResource.path("org/javacs/example/ReferenceGotoPackagePrivate.java");
+        open(server, unused);
+        open(server, other);
+        try {
+            // The first time, both files need to be linted
+            server.lintChanged();
+            assertThat(linted, hasItems(unused.toUri(), other.toUri()));
+            // If nothing has changed, nothing needs to be linted
+            linted.clear();
+            server.lintChanged();
+            assertThat(linted, empty());
+            // If one file changes, only that file needs to be linted
+            var change = new DidChangeTextDocumentParams();
+            change.textDocument.uri = unused.toUri();
+            change.textDocument.version = 2;
+            var evt = new TextDocumentContentChangeEvent();
+            evt.text = FileStore.contents(unused) + "\n";
+            change.contentChanges.add(evt);
+            server.didChangeTextDocument(change);
+            linted.clear();
+            server.lintChanged();
+            assertThat(linted, hasItem(unused.toUri()));
+            assertThat(linted, not(hasItem(other.toUri())));
+        } finally {
+            close(server, unused);
+            close(server, other);
+        }
+    }
+
+    @Test
+    public void closeUntitledDocument() {
+        // Closing a document that isn't a file forgets nothing, and doesn't try to turn its uri into a path
+        var close = new DidCloseTextDocumentParams();
+        close.textDocument.uri = URI.create("untitled:Untitled-1");
+        server.didCloseTextDocument(close);
+    }
+
+    private void open(JavaLanguageServer server, Path file) {
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument.uri = file.toUri();
+        open.textDocument.text = FileStore.contents(file);
+        open.textDocument.version = 1;
+        server.didOpenTextDocument(open);
+    }
+
+    private void close(JavaLanguageServer server, Path file) {
+        var close = new DidCloseTextDocumentParams();
+        close.textDocument.uri = file.toUri();
+        server.didCloseTextDocument(close);
+    }
+
     // TODO warn on type.equals(otherType)
     // TODO warn on map.get(wrongKeyType)
 }
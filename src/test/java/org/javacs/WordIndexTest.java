@@ -0,0 +1,57 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import org.junit.Test;
+
+public class WordIndexTest {
+    @Test
+    public void indexWordsAndImports() {
+        var words =
+                WordIndex.words(
+                        "package a.b;\n\nimport c.D;\nimport e.*;\nimport static f.G.h;\n\nclass X { int yy; }\n");
+        assertThat(words, hasItems("X", "yy", "int", "package a.b", "import c.D", "import e.*", "import f.G"));
+        assertThat(words, not(hasItem("y")));
+    }
+
+    @Test
+    public void indexFindsFiles() {
+        FileStore.setWorkspaceRoots(Collections.singleton(LanguageServerFixture.DEFAULT_WORKSPACE_ROOT));
+        var file = FindResource.path("/org/javacs/example/GotoOther.java");
+        assertThat(WordIndex.filesContaining("GotoOther"), hasItem(file));
+        assertThat(WordIndex.filesImporting("org.javacs.example", "GotoOther"), hasItem(file));
+        assertThat(WordIndex.filesContaining("NoSuchWordAnywhere"), empty());
+    }
+
+    @Test
+    public void indexFindsDependents() {
+        FileStore.setWorkspaceRoots(Collections.singleton(LanguageServerFixture.DEFAULT_WORKSPACE_ROOT));
+        var file = FindResource.path("/org/javacs/example/GotoOther.java");
+        var dependents = WordIndex.dependents(file);
+        assertThat(dependents, hasItem(FindResource.path("/org/javacs/example/Goto.java")));
+        assertThat(dependents, not(hasItem(file)));
+    }
+
+    @Test
+    public void findExistingImports() {
+        var rel = Paths.get("src", "org", "javacs", "doimport");
+        var dir = LanguageServerFixture.DEFAULT_WORKSPACE_ROOT.resolve(rel);
+        FileStore.setWorkspaceRoots(Collections.singleton(dir));
+        var existing = WordIndex.existingImports();
+        assertThat(existing.classes, hasItems("java.util.List"));
+        assertThat(existing.packages, hasItems("java.util", "java.io"));
+    }
+
+    @Test
+    public void findExistingImportsInBatch() {
+        FileStore.setWorkspaceRoots(Collections.singleton(JavaCompilerServiceTest.simpleProjectSrc()));
+        assertThat(FileStore.all(), not(empty()));
+
+        var find = WordIndex.existingImports();
+        assertThat(find.classes, hasItem("java.util.List"));
+        assertThat(find.packages, hasItem("java.util"));
+    }
+}
@@ -6,6 +6,8 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -18,9 +20,14 @@ public class LanguageServerTest {
     PipedInputStream clientToServer = new PipedInputStream(10 * 1024 * 1024),
             serverToClient = new PipedInputStream(10 * 1024 * 1024);
     PipedOutputStream writeClientToServer, writeServerToClient;
+    Framer readServerToClient = new Framer(serverToClient);
     LanguageServer mockServer;
     Thread main;
-    CompletableFuture<Void> receivedInitialize = new CompletableFuture<>();
+    CompletableFuture<Void> receivedInitialize = new CompletableFuture<>(),
+            startedHover = new CompletableFuture<>(),
+            finishHover = new CompletableFuture<>(),
+            receivedDocumentSymbol = new CompletableFuture<>(),
+            startedDefinition = new CompletableFuture<>();
 
     class TestLanguageServer extends LanguageServer {
         @Override
@@ -28,6 +35,29 @@ public class LanguageServerTest {
             receivedInitialize.complete(null);
             return new InitializeResult();
         }
+
+        @Override
+        public Optional<Hover> hover(TextDocumentPositionParams params) {
+            startedHover.complete(null);
+            finishHover.join();
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<List<Location>> gotoDefinition(TextDocumentPositionParams params) {
+            startedDefinition.complete(null);
+            // Spin until cancelled
+            while (true) {
+                CancelToken.checkCancelled();
+                Thread.onSpinWait();
+            }
+        }
+
+        @Override
+        public List<SymbolInformation> documentSymbol(DocumentSymbolParams params) {
+            receivedDocumentSymbol.complete(null);
+            return List.of();
+        }
     }
 
     static {
@@ -85,4 +115,50 @@ public class LanguageServerTest {
         main.join(10_000);
         assertThat("Main thread has quit", main.isAlive(), equalTo(false));
     }
+
+    String hoverMessage =
+            "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"textDocument/hover\",\"params\":"
+                    + "{\"textDocument\":{\"uri\":\"file:///Foo.java\"},\"position\":{\"line\":0,\"character\":0}}}";
+    String documentSymbolMessage =
+            "{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"textDocument/documentSymbol\",\"params\":"
+                    + "{\"textDocument\":{\"uri\":\"file:///Foo.java\"}}}";
+
+    @Test
+    public void slowRequestDoesNotBlockReadOnlyRequests()
+            throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        sendToServer(initializeMessage);
+        receivedInitialize.get(10, TimeUnit.SECONDS);
+        // Start a hover that won't finish until we say so
+        sendToServer(hoverMessage);
+        startedHover.get(10, TimeUnit.SECONDS);
+        // documentSymbol should run while hover is still in progress
+        sendToServer(documentSymbolMessage);
+        receivedDocumentSymbol.get(10, TimeUnit.SECONDS);
+        finishHover.complete(null);
+        sendToServer(exitMessage);
+        main.join(10_000);
+        assertThat("Main thread has quit", main.isAlive(), equalTo(false));
+    }
+
+    String definitionMessage =
+            "{\"jsonrpc\":\"2.0\",\"id\":4,\"method\":\"textDocument/definition\",\"params\":"
+                    + "{\"textDocument\":{\"uri\":\"file:///Foo.java\"},\"position\":{\"line\":0,\"character\":0}}}";
+    String cancelDefinitionMessage = "{\"jsonrpc\":\"2.0\",\"method\":\"$/cancelRequest\",\"params\":{\"id\":4}}";
+
+    @Test
+    public void cancelRunningRequest() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        sendToServer(initializeMessage);
+        receivedInitialize.get(10, TimeUnit.SECONDS);
+        readServerToClient.next();
+        // Start a request that runs until it's cancelled, then cancel it
+        sendToServer(definitionMessage);
+        startedDefinition.get(10, TimeUnit.SECONDS);
+        sendToServer(cancelDefinitionMessage);
+        var response = readServerToClient.next();
+        assertThat(response, containsString("\"id\":4"));
+        assertThat(response, containsString(Integer.toString(ErrorCodes.RequestCancelled)));
+        sendToServer(exitMessage);
+        main.join(10_000);
+        assertThat("Main thread has quit", main.isAlive(), equalTo(false));
+    }
 }
@@ -76,7 +76,7 @@ public class LspTest {
         writer.write(header.getBytes());
         writer.write(message.getBytes());
 
-        var token = LSP.nextToken(buffer);
+        var token = new Framer(buffer).next();
         assertThat(token, equalTo(message));
 
         var parse = LSP.parseMessage(token);
@@ -86,6 +86,22 @@ public class LspTest {
         assertThat(parse.params, equalTo(new JsonObject()));
     }
 
+    @Test
+    public void readMultibyteMessages() throws IOException {
+        var first = "{\"jsonrpc\":\"2.0\",\"method\":\"🔥\"}";
+        var second = "{\"jsonrpc\":\"2.0\",\"method\":\"é\"}";
+        for (var message : new String[] {first, second}) {
+            var bytes = message.getBytes(Charset.forName("UTF-8"));
+            var header = String.format("Content-Length: %d\r\n\r\n", bytes.length);
+            writer.write(header.getBytes());
+            writer.write(bytes);
+        }
+
+        var framer = new Framer(buffer);
+        assertThat(framer.next(), equalTo(first));
+        assertThat(framer.next(), equalTo(second));
+    }
+
     @Test
     public void excludeDefaults() {
         var item = new CompletionItem();